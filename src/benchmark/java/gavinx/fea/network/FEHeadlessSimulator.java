@@ -0,0 +1,167 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FEBlockEnergy;
+import gavinx.fea.api.FECable;
+import gavinx.fea.api.FESideMode;
+import gavinx.fea.api.FETransactions;
+import gavinx.fea.impl.SimpleFEStorage;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * Runs a synthetic factory on an {@link InMemoryCableGraphSource} and measures ticks per second, without a
+ * Minecraft server.
+ *
+ * <p>The factory is a set of parallel straight cable lines. Every cable has one machine on top: every
+ * {@code generatorEvery}-th machine is a generator that pushes into the line each tick, the others are consumers
+ * draining a fixed rate. A tick generates, pushes via {@link FECableTransfer#distributeFrom(FECableNetworkManager,
+ * BlockPos, Direction, long, boolean)}, consumes and advances the clock, just like block entity ticks would.
+ *
+ * <p>Usage: {@code ./gradlew headlessSimulator --args="[machines] [ticks] [lineLength]"}
+ */
+public final class FEHeadlessSimulator {
+	public record Report(int machines, int networks, long ticks, long nanos, long generatedFE, long movedFE,
+			long consumedFE) {
+		public double ticksPerSecond() {
+			return nanos == 0 ? 0 : ticks * 1_000_000_000.0 / nanos;
+		}
+
+		public double millisPerTick() {
+			return ticks == 0 ? 0 : nanos / 1_000_000.0 / ticks;
+		}
+	}
+
+	private static final long GENERATOR_RATE = 120;
+	private static final long GENERATOR_BUFFER = 10_000;
+	private static final long CONSUMER_RATE = 30;
+	private static final long CONSUMER_BUFFER = 2_000;
+	private static final long CABLE_CAPACITY = 1_000;
+
+	private final InMemoryCableGraphSource source = new InMemoryCableGraphSource();
+	private final FECableNetworkManager manager = new FECableNetworkManager(source);
+	private final BlockPos[] generatorPos;
+	private final SimpleFEStorage[] generators;
+	private final SimpleFEStorage[] consumers;
+	private final int machines;
+	private final int lines;
+
+	public FEHeadlessSimulator(int machines, int lineLength, int generatorEvery) {
+		if (machines <= 0 || lineLength <= 0 || generatorEvery <= 0) {
+			throw new IllegalArgumentException("machines, lineLength and generatorEvery must be > 0");
+		}
+		this.machines = machines;
+		this.lines = (machines + lineLength - 1) / lineLength;
+
+		FECable cable = new FECable() {
+			@Override
+			public long getTransferCapacityFE() {
+				return CABLE_CAPACITY;
+			}
+
+			@Override
+			public int getResistancePercent() {
+				return 0;
+			}
+		};
+		FEBlockEnergy generatorDef = new FEBlockEnergy() {
+			@Override
+			public long getStorageCapacityFE() {
+				return GENERATOR_BUFFER;
+			}
+
+			@Override
+			public FESideMode getSideMode(Direction side) {
+				return FESideMode.OUT;
+			}
+
+			@Override
+			public long getGenerationRateFE() {
+				return GENERATOR_RATE;
+			}
+		};
+
+		int generatorCount = 0;
+		for (int i = 0; i < machines; i++) {
+			if (i % generatorEvery == 0) generatorCount++;
+		}
+		generatorPos = new BlockPos[generatorCount];
+		generators = new SimpleFEStorage[generatorCount];
+		consumers = new SimpleFEStorage[machines - generatorCount];
+
+		int g = 0;
+		int c = 0;
+		for (int i = 0; i < machines; i++) {
+			int x = i % lineLength;
+			// Lines two blocks apart so they stay separate networks.
+			int z = (i / lineLength) * 2;
+			source.putCable(new BlockPos(x, 0, z), cable);
+
+			BlockPos machinePos = new BlockPos(x, 1, z);
+			if (i % generatorEvery == 0) {
+				SimpleFEStorage storage = new SimpleFEStorage(GENERATOR_BUFFER);
+				source.putStorage(machinePos, storage);
+				source.putBlockEnergy(machinePos, generatorDef);
+				generatorPos[g] = machinePos;
+				generators[g++] = storage;
+			} else {
+				SimpleFEStorage storage = new SimpleFEStorage(CONSUMER_BUFFER);
+				source.putStorage(machinePos, storage);
+				consumers[c++] = storage;
+			}
+		}
+	}
+
+	public FECableNetworkManager getManager() {
+		return manager;
+	}
+
+	/** Run {@code warmupTicks} untimed ticks (network builds, route caches), then {@code ticks} timed ones. */
+	public Report run(int warmupTicks, int ticks) {
+		for (int i = 0; i < warmupTicks; i++) {
+			tick(null);
+		}
+
+		long[] totals = new long[3];
+		long start = System.nanoTime();
+		for (int i = 0; i < ticks; i++) {
+			tick(totals);
+		}
+		long nanos = System.nanoTime() - start;
+		return new Report(machines, lines, ticks, nanos, totals[0], totals[1], totals[2]);
+	}
+
+	private void tick(long[] totals) {
+		long generated = 0;
+		long moved = 0;
+		long consumed = 0;
+
+		for (int i = 0; i < generators.length; i++) {
+			generated += FETransactions.insert(generators[i], GENERATOR_RATE, false);
+			moved += FECableTransfer.distributeFrom(manager, generatorPos[i], Direction.DOWN, GENERATOR_RATE * 2,
+					false);
+		}
+		for (SimpleFEStorage consumer : consumers) {
+			consumed += FETransactions.extract(consumer, CONSUMER_RATE, false);
+		}
+		source.tick();
+
+		if (totals != null) {
+			totals[0] += generated;
+			totals[1] += moved;
+			totals[2] += consumed;
+		}
+	}
+
+	public static void main(String[] args) {
+		int machines = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 1200;
+		int lineLength = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+		FEHeadlessSimulator sim = new FEHeadlessSimulator(machines, lineLength, 4);
+		Report r = sim.run(Math.min(200, ticks), ticks);
+		System.out.printf("machines=%d networks=%d ticks=%d %.1f ticks/s (%.3f ms/tick) generated=%d moved=%d"
+				+ " consumed=%d FE%n", r.machines(), r.networks(), r.ticks(), r.ticksPerSecond(), r.millisPerTick(),
+				r.generatedFE(), r.movedFE(), r.consumedFE());
+	}
+}
@@ -0,0 +1,125 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FECable;
+
+import java.util.Random;
+
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Heap and {@link FECableNetworkManager#getNetworkContaining(BlockPos)} time of a whole manager over 1M cables of an
+ * {@link InMemoryCableGraphSource}, in three layouts: a solid 100^3 block of one network, 1000 parallel lines of 1000
+ * cables (one network each), and cables scattered at random over a 2048x128x2048 area (mostly single-cable networks).
+ *
+ * <p>The manager's heap is the growth of used memory, after full collections, from the populated source to the
+ * manager with every network discovered: networks, their graphs and the position index together. Lookups are timed
+ * in placement order, where consecutive cables are neighbours, and in a shuffled order. Run it with a fixed heap and
+ * nothing else going on: {@code ./gradlew networkHeapBenchmark}
+ */
+public final class FENetworkHeapBenchmark {
+	private static final int CABLES = 1_000_000;
+
+	private static final FECable CABLE = new FECable() {
+		@Override
+		public long getTransferCapacityFE() {
+			return 1_000;
+		}
+
+		@Override
+		public int getResistancePercent() {
+			return 0;
+		}
+	};
+
+	private FENetworkHeapBenchmark() {}
+
+	public static void main(String[] args) {
+		String only = args.length > 0 ? args[0] : null;
+
+		if (only == null || only.equals("block")) {
+			BlockPos[] block = new BlockPos[CABLES];
+			int n = 0;
+			for (int y = 0; y < 100; y++) {
+				for (int z = 0; z < 100; z++) {
+					for (int x = 0; x < 100; x++) {
+						block[n++] = new BlockPos(x, y, z);
+					}
+				}
+			}
+			run("block", block);
+		}
+
+		if (only == null || only.equals("lines")) {
+			BlockPos[] lines = new BlockPos[CABLES];
+			int n = 0;
+			for (int line = 0; line < 1000; line++) {
+				for (int x = 0; x < 1000; x++) {
+					lines[n++] = new BlockPos(x, 64, line * 8);
+				}
+			}
+			run("lines", lines);
+		}
+
+		if (only == null || only.equals("scattered")) {
+			Random random = new Random(1);
+			BlockPos[] scattered = new BlockPos[CABLES];
+			for (int i = 0; i < CABLES; i++) {
+				scattered[i] = new BlockPos(random.nextInt(2048), random.nextInt(128), random.nextInt(2048));
+			}
+			run("scattered", scattered);
+		}
+	}
+
+	private static void run(String layout, BlockPos[] positions) {
+		InMemoryCableGraphSource source = new InMemoryCableGraphSource();
+		for (BlockPos pos : positions) {
+			source.putCable(pos, CABLE);
+		}
+		BlockPos[] shuffled = positions.clone();
+		Random random = new Random(2);
+		for (int i = shuffled.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			BlockPos swap = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = swap;
+		}
+
+		long base = usedHeap();
+		FECableNetworkManager manager = new FECableNetworkManager(source);
+		long discoverStart = System.nanoTime();
+		for (BlockPos pos : positions) {
+			if (manager.getNetworkContaining(pos) == null) throw new AssertionError(layout + ": no network at " + pos);
+		}
+		long discoverNanos = System.nanoTime() - discoverStart;
+		long managerBytes = usedHeap() - base;
+
+		double inOrder = time(manager, positions) / positions.length;
+		double inShuffle = time(manager, shuffled) / positions.length;
+		System.out.printf("%-9s %,9d cables | manager %8.2f MiB | discovery %6.0f ms | lookup %5.1f ns in order,"
+				+ " %5.1f ns shuffled%n", layout, positions.length, managerBytes / 1048576.0, discoverNanos / 1e6,
+				inOrder, inShuffle);
+	}
+
+	private static long sink;
+
+	/** Mean nanoseconds per pass over {@code positions}, after a warm-up pass. */
+	private static double time(FECableNetworkManager manager, BlockPos[] positions) {
+		int reps = 5;
+		long start = 0;
+		for (int rep = -1; rep < reps; rep++) {
+			if (rep == 0) start = System.nanoTime();
+			for (BlockPos pos : positions) {
+				sink += manager.getNetworkContaining(pos).id;
+			}
+		}
+		return (double) (System.nanoTime() - start) / reps;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
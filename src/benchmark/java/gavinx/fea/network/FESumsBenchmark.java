@@ -0,0 +1,67 @@
+package gavinx.fea.network;
+
+import java.util.Random;
+
+/**
+ * Compares the scalar and vectorized {@link FESums} kernels over endpoint arrays of 1k, 10k and 100k entries.
+ *
+ * <p>Self-timed: each kernel is warmed up, then timed over enough repetitions to run for about half a second. {@code
+ * ./gradlew sumsBenchmark} runs it with the incubator module; without it only the scalar kernels are measured.
+ */
+public final class FESumsBenchmark {
+	private static final int[] SIZES = {1_000, 10_000, 100_000};
+
+	private FESumsBenchmark() {}
+
+	public static void main(String[] args) {
+		boolean vector = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+		if (!vector) System.out.println("jdk.incubator.vector not present; scalar only");
+
+		Random random = new Random(1);
+		for (int size : SIZES) {
+			long[] capacity = new long[size];
+			long[] amount = new long[size];
+			for (int i = 0; i < size; i++) {
+				capacity[i] = 1_000 + random.nextInt(1_000_000);
+				amount[i] = capacity[i];
+			}
+			// One endpoint with space, at the end, so anyGreater scans everything.
+			amount[size - 1]--;
+
+			Kernel scalarSum = () -> FESums.scalarSaturatingSum(capacity, size);
+			Kernel scalarSpace = () -> FESums.scalarAnyGreater(capacity, amount, size) ? 1 : 0;
+			System.out.printf("%,7d endpoints: sum scalar %8.1f ns", size, time(scalarSum));
+			if (vector) {
+				Kernel vectorSum = () -> FEVectorSums.saturatingSum(capacity, size);
+				if (vectorSum.run() != scalarSum.run()) throw new AssertionError("sum mismatch at " + size);
+				System.out.printf(", vector %8.1f ns", time(vectorSum));
+			}
+			System.out.printf(" | space scalar %8.1f ns", time(scalarSpace));
+			if (vector) {
+				Kernel vectorSpace = () -> FEVectorSums.anyGreater(capacity, amount, size) ? 1 : 0;
+				System.out.printf(", vector %8.1f ns", time(vectorSpace));
+			}
+			System.out.println();
+		}
+	}
+
+	private interface Kernel {
+		long run();
+	}
+
+	private static long sink;
+
+	/** Mean nanoseconds per call. */
+	private static double time(Kernel kernel) {
+		long reps = 1;
+		while (true) {
+			long start = System.nanoTime();
+			for (long i = 0; i < reps; i++) {
+				sink += kernel.run();
+			}
+			long nanos = System.nanoTime() - start;
+			if (nanos > 500_000_000L) return (double) nanos / reps;
+			reps *= 2;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package gavinx.fea.network;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Replays a trace recorded with {@link FETraceRecorder} a number of times with {@link FETraceReplayer} and prints
+ * requests/s and mismatches of each pass; later passes run on a warm JIT.
+ *
+ * <p>Usage: {@code ./gradlew traceReplay --args="<trace> [passes]"}
+ */
+public final class FETraceReplayBenchmark {
+	private FETraceReplayBenchmark() {}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 2) {
+			System.err.println("usage: FETraceReplayBenchmark <trace> [passes]");
+			System.exit(2);
+		}
+		Path trace = Path.of(args[0]);
+		int passes = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+		for (int pass = 1; pass <= passes; pass++) {
+			FETraceReplayer.Result r = FETraceReplayer.replay(trace);
+			System.out.printf("pass %d: requests=%d mismatches=%d routeMismatches=%d extracted=%d FE engine=%.3f ms"
+					+ " (%.0f requests/s)%n", pass, r.requests(), r.mismatches(), r.routeMismatches(), r.extractedFE(),
+					r.engineNanos() / 1_000_000.0, r.requestsPerSecond());
+			if (r.untraced() > 0) {
+				System.err.printf("warning: %d pulls/buffered inserts moving %d FE were not recorded and are not"
+						+ " replayed; the results cover recorded distributions only%n", r.untraced(), r.untracedFE());
+			}
+		}
+	}
+}
@@ -1,6 +1,15 @@
 package gavinx.fea;
 
+import gavinx.fea.network.FECableNetworkManager;
+import gavinx.fea.network.FECableNetworks;
+import gavinx.fea.network.FENetworkScheduler;
+import gavinx.fea.network.FEWirelessChannels;
+import gavinx.fea.network.FEWirelessManager;
+
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,5 +21,28 @@ public class FeaMod implements ModInitializer {
 	@Override
 	public void onInitialize() {
 		LOGGER.info("Fabric Energy API initializing");
+
+		// Storages of (un)loaded chunks are new objects; drop cached endpoint state that refers to them.
+		ServerChunkEvents.CHUNK_LOAD.register((world, chunk) -> {
+			FECableNetworkManager manager = FECableNetworks.getIfPresent(world);
+			if (manager != null) manager.onChunkChanged(chunk.getPos());
+		});
+		ServerChunkEvents.CHUNK_UNLOAD.register((world, chunk) -> {
+			FECableNetworkManager manager = FECableNetworks.getIfPresent(world);
+			if (manager != null) manager.onChunkUnloaded(chunk.getPos());
+		});
+
+		ServerTickEvents.START_SERVER_TICK.register(server -> FECableNetworks.prefetchRoutes());
+		// Buffered FE is not saved; give it back to its sources before the worlds are saved.
+		ServerLifecycleEvents.SERVER_STOPPING.register(server -> FECableNetworks.flushBuffers());
+		ServerTickEvents.END_WORLD_TICK.register(world -> {
+			FEWirelessManager wireless = FEWirelessChannels.getIfPresent(world);
+			if (wireless != null) wireless.tick();
+			FECableNetworkManager manager = FECableNetworks.getIfPresent(world);
+			if (manager == null) return;
+			manager.tick();
+			FENetworkScheduler scheduler = manager.getSchedulerIfPresent();
+			if (scheduler != null) scheduler.tick();
+		});
 	}
 }
@@ -13,6 +13,9 @@ import net.minecraft.util.math.Direction;
  * <p>Generation itself is event-driven: the producing mod calls into its own logic and inserts FE into storage.
  */
 public interface FEBlockEnergy {
+	int MIN_INPUT_PRIORITY = -128;
+	int MAX_INPUT_PRIORITY = 127;
+
 	/**
 	 * Declared storage capacity, or 0 if the block does not store FE.
 	 *
@@ -29,6 +32,32 @@ public interface FEBlockEnergy {
 		return FESideMode.BOTH;
 	}
 
+	/**
+	 * Max FE per tick the block accepts from cable networks on {@code side}, summed over all sources feeding it in
+	 * a tick. Default: unlimited.
+	 */
+	default long getMaxInputRateFE(Direction side) {
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Max FE per tick cable networks may pull out of the block on {@code side}, summed over all distributions from
+	 * that side in a tick. Default: unlimited.
+	 */
+	default long getMaxOutputRateFE(Direction side) {
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Priority of {@code side} as a cable network consumer, in [{@link #MIN_INPUT_PRIORITY},
+	 * {@link #MAX_INPUT_PRIORITY}]; out-of-range values are clamped. A distribution serves higher priorities first and
+	 * only offers lower ones what is left; consumers of equal priority are served in route order (lowest resistance,
+	 * then highest capacity). Default 0.
+	 */
+	default int getInputPriority(Direction side) {
+		return 0;
+	}
+
 	/**
 	 * Optional: how much FE the block is currently producing, in FE per tick (FE/t). Default 0.
 	 *
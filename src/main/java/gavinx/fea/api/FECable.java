@@ -6,14 +6,17 @@ package gavinx.fea.api;
  * <p>Values are defined by modders:
  * - transfer capacity is in FE per transfer operation (typically per-tick)
  * - resistance is a percent [0..100]; 0 = no loss, 100 = no transfer
+ * - cables that need finer loss may override {@link #getResistancePpm()} (parts per million)
  *
  * <p>When traversing a path, capacity is treated as a bottleneck (minimum across segments) and
- * resistance is treated as additive across segments, clamped to {@code 0..100}. A transfer that
- * sends {@code sent} FE across total resistance {@code r} delivers:
+ * resistance is treated as additive across segments, clamped to {@code 0..1_000_000} ppm. A transfer that
+ * sends {@code sent} FE across total resistance {@code r} ppm delivers:
  *
  * <pre>
- * delivered = floor(sent * (100 - r) / 100)
+ * delivered = floor(sent * (1_000_000 - r) / 1_000_000)
  * </pre>
+ *
+ * <p>which is {@code floor(sent * (100 - p) / 100)} for a whole-percent resistance {@code p}.
  */
 public interface FECable {
 	/** Max FE that can traverse this cable (typically per-tick). */
@@ -28,4 +31,12 @@ public interface FECable {
 		if (r > 100) return 100;
 		return r;
 	}
+
+	/**
+	 * Loss along this cable in parts per million, clamped to [0..1_000_000]. Defaults to
+	 * {@link #getResistancePercentClamped()} scaled to ppm.
+	 */
+	default int getResistancePpm() {
+		return getResistancePercentClamped() * 10_000;
+	}
 }
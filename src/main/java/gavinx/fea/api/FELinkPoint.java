@@ -43,4 +43,12 @@ public interface FELinkPoint {
 		if (r > 100) return 100;
 		return r;
 	}
+
+	/**
+	 * Loss for traversing this port in parts per million, {@code 0..1_000_000}. Defaults to
+	 * {@link #getResistancePercentClamped()} scaled to ppm.
+	 */
+	default int getResistancePpm() {
+		return getResistancePercentClamped() * 10_000;
+	}
 }
@@ -46,4 +46,28 @@ public interface FEStorage {
 	default boolean supportsExtraction() {
 		return true;
 	}
+
+	/**
+	 * The storage that actually holds the FE behind this instance.
+	 *
+	 * <p>Views over shared storage (e.g. one member of a multiblock pool) return the shared storage, so
+	 * callers that walk many endpoints can count or fill it once. Defaults to {@code this}.
+	 */
+	default FEStorage getBackingStorage() {
+		return this;
+	}
+
+	/**
+	 * Register a listener notified after committed changes to this storage.
+	 *
+	 * <p>Optional: storages that do not support notifications return false, and callers must fall back
+	 * to polling {@link #getAmount()}/{@link #getCapacity()}.
+	 *
+	 * @return true if the listener is (now) registered
+	 */
+	default boolean addListener(FEStorageListener listener) {
+		return false;
+	}
+
+	default void removeListener(FEStorageListener listener) {}
 }
@@ -0,0 +1,17 @@
+package gavinx.fea.api;
+
+/**
+ * Change notification for {@link FEStorage}.
+ *
+ * <p>Fired after the outer transaction that changed the storage has committed (never for simulations or
+ * aborted transactions), and when the storage is changed outside of a transaction (e.g. NBT load, capacity
+ * change). Listeners must not assume the amount actually differs from the previous notification.
+ */
+@FunctionalInterface
+public interface FEStorageListener {
+	/**
+	 * @param storage the storage that changed; for views over shared storage this is the
+	 *                {@link FEStorage#getBackingStorage() backing storage}
+	 */
+	void onStorageChanged(FEStorage storage);
+}
@@ -44,4 +44,68 @@ public final class FETransfer {
 			return inserted;
 		}
 	}
+
+	/**
+	 * Transfer between many pairs in one outer transaction, see
+	 * {@link #transferAll(FEStorage[], FEStorage[], long[], int, long[], boolean)}.
+	 */
+	public static long transferAll(FEStorage[] from, FEStorage[] to, long[] maxAmounts, long[] results,
+			boolean simulate) {
+		return transferAll(from, to, maxAmounts, from.length, results, simulate);
+	}
+
+	/**
+	 * Transfer up to {@code maxAmounts[i]} FE from {@code from[i]} into {@code to[i]} for each of the first
+	 * {@code count} pairs, in order, within one outer transaction; {@code results[i]} receives the amount transferred.
+	 *
+	 * <p>Each pair first simulates how much its target accepts and then extracts only that, so no FE has to be
+	 * refunded; a pair whose target then takes less than was extracted is rolled back on its own, without affecting
+	 * the others. Later pairs see the effects of earlier ones, e.g. a storage filled by one pair can feed the next.
+	 *
+	 * @return the total amount transferred
+	 */
+	public static long transferAll(FEStorage[] from, FEStorage[] to, long[] maxAmounts, int count, long[] results,
+			boolean simulate) {
+		if (count < 0 || count > from.length || count > to.length || count > maxAmounts.length
+				|| count > results.length) {
+			throw new IllegalArgumentException("count " + count + " exceeds the pair arrays");
+		}
+		long total = 0;
+		try (Transaction transaction = Transaction.openOuter()) {
+			for (int i = 0; i < count; i++) {
+				results[i] = transferPair(from[i], to[i], maxAmounts[i], transaction);
+				total += results[i];
+			}
+
+			if (!simulate) {
+				transaction.commit();
+			}
+		}
+		return total;
+	}
+
+	private static long transferPair(FEStorage from, FEStorage to, long maxAmount, Transaction outer) {
+		if (from == null || to == null) return 0;
+		if (from == to) return 0;
+		if (maxAmount <= 0) return 0;
+		if (!from.supportsExtraction() || !to.supportsInsertion()) return 0;
+
+		long accepted;
+		try (Transaction simulation = Transaction.openNested(outer)) {
+			accepted = to.insert(maxAmount, simulation);
+		}
+		if (accepted <= 0) return 0;
+
+		try (Transaction step = Transaction.openNested(outer)) {
+			long extracted = from.extract(accepted, step);
+			if (extracted <= 0) return 0;
+			long inserted = to.insert(extracted, step);
+			if (inserted != extracted) {
+				// The target changed its mind; roll back this pair only.
+				return 0;
+			}
+			step.commit();
+			return inserted;
+		}
+	}
 }
@@ -1,9 +1,9 @@
 package gavinx.fea.impl;
 
 import gavinx.fea.api.FEStorage;
+import gavinx.fea.api.FEStorageListener;
 
 import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
-import net.fabricmc.fabric.api.transfer.v1.transaction.base.SnapshotParticipant;
 import net.minecraft.nbt.NbtCompound;
 
 /**
@@ -12,7 +12,7 @@ import net.minecraft.nbt.NbtCompound;
  * <p>Stores the amount in-memory and supports Fabric transactions.
  * Call {@link #readFromNbt(NbtCompound)} / {@link #writeToNbt(NbtCompound)} from your BE NBT methods.
  */
-public final class BlockEntityFEStorage extends SnapshotParticipant<Long> implements FEStorage {
+public final class BlockEntityFEStorage extends LongSnapshotParticipant implements FEStorage {
 	public static final String DEFAULT_NBT_KEY = "fea_fe";
 
 	private final long capacity;
@@ -22,7 +22,7 @@ public final class BlockEntityFEStorage extends SnapshotParticipant<Long> implem
 	private final Runnable onFinalCommit;
 	private final String nbtKey;
 
-	private boolean changed;
+	private FEStorageListeners listeners;
 
 	public BlockEntityFEStorage(long capacity, Runnable onFinalCommit) {
 		this(capacity, 0, DEFAULT_NBT_KEY, true, true, onFinalCommit);
@@ -53,7 +53,6 @@ public final class BlockEntityFEStorage extends SnapshotParticipant<Long> implem
 		long inserted = Math.min(space, maxAmount);
 		if (inserted > 0) {
 			amount += inserted;
-			changed = true;
 		}
 		return inserted;
 	}
@@ -66,7 +65,6 @@ public final class BlockEntityFEStorage extends SnapshotParticipant<Long> implem
 		long extracted = Math.min(amount, maxAmount);
 		if (extracted > 0) {
 			amount -= extracted;
-			changed = true;
 		}
 		return extracted;
 	}
@@ -91,18 +89,32 @@ public final class BlockEntityFEStorage extends SnapshotParticipant<Long> implem
 		return allowExtraction;
 	}
 
+	@Override
+	public boolean addListener(FEStorageListener listener) {
+		if (listeners == null) listeners = new FEStorageListeners();
+		return listeners.add(listener);
+	}
+
+	@Override
+	public void removeListener(FEStorageListener listener) {
+		if (listeners != null) listeners.remove(listener);
+	}
+
 	public void readFromNbt(NbtCompound nbt) {
 		readFromNbt(nbt, nbtKey);
 	}
 
 	public void readFromNbt(NbtCompound nbt, String key) {
+		long previous = amount;
 		if (nbt == null) {
 			amount = 0;
-			return;
+		} else {
+			String k = (key == null || key.isBlank()) ? DEFAULT_NBT_KEY : key;
+			amount = clamp(nbt.getLong(k));
+		}
+		if (amount != previous && listeners != null) {
+			listeners.fire(this);
 		}
-		String k = (key == null || key.isBlank()) ? DEFAULT_NBT_KEY : key;
-		long v = nbt.getLong(k);
-		amount = clamp(v);
 	}
 
 	public void writeToNbt(NbtCompound nbt) {
@@ -116,23 +128,24 @@ public final class BlockEntityFEStorage extends SnapshotParticipant<Long> implem
 	}
 
 	@Override
-	protected Long createSnapshot() {
+	protected long createSnapshot() {
 		return amount;
 	}
 
 	@Override
-	protected void readSnapshot(Long snapshot) {
-		amount = snapshot == null ? 0 : clamp(snapshot);
-		changed = false;
+	protected void readSnapshot(long snapshot) {
+		amount = clamp(snapshot);
 	}
 
 	@Override
 	protected void onFinalCommit() {
-		if (!changed) return;
-		changed = false;
+		if (amount == getOuterSnapshot()) return;
 		if (onFinalCommit != null) {
 			onFinalCommit.run();
 		}
+		if (listeners != null) {
+			listeners.fire(this);
+		}
 	}
 
 	private long clamp(long v) {
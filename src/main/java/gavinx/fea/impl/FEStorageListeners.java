@@ -0,0 +1,49 @@
+package gavinx.fea.impl;
+
+import gavinx.fea.api.FEStorage;
+import gavinx.fea.api.FEStorageListener;
+
+import java.util.Arrays;
+
+/** Copy-on-write listener list shared by the reference storages; listeners may unregister while being fired. */
+final class FEStorageListeners {
+	private static final FEStorageListener[] NONE = new FEStorageListener[0];
+
+	private FEStorageListener[] listeners = NONE;
+
+	boolean add(FEStorageListener listener) {
+		if (listener == null) return false;
+		for (FEStorageListener l : listeners) {
+			if (l == listener) return true;
+		}
+		FEStorageListener[] next = Arrays.copyOf(listeners, listeners.length + 1);
+		next[listeners.length] = listener;
+		listeners = next;
+		return true;
+	}
+
+	void remove(FEStorageListener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] != listener) continue;
+			if (listeners.length == 1) {
+				listeners = NONE;
+				return;
+			}
+			FEStorageListener[] next = new FEStorageListener[listeners.length - 1];
+			System.arraycopy(listeners, 0, next, 0, i);
+			System.arraycopy(listeners, i + 1, next, i, listeners.length - i - 1);
+			listeners = next;
+			return;
+		}
+	}
+
+	boolean isEmpty() {
+		return listeners.length == 0;
+	}
+
+	void fire(FEStorage storage) {
+		for (FEStorageListener l : listeners) {
+			l.onStorageChanged(storage);
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package gavinx.fea.impl;
+
+import gavinx.fea.api.FEStorage;
+import gavinx.fea.api.FEStorageListener;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.Arrays;
+
+import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Reference implementation for multiblock storage: many block positions share one FE counter.
+ *
+ * <p>Each member block contributes capacity and exposes a lightweight {@link Member} view. All views
+ * delegate to the pool, so a transfer into any member touches a single transaction participant, and
+ * {@link FEStorage#getBackingStorage()} lets network code treat the whole pool as one endpoint.
+ *
+ * <p>Member positions and capacities are kept in parallel {@code long[]} slabs. Membership must not be
+ * changed while a transaction is open.
+ */
+public final class FEStoragePool extends LongSnapshotParticipant implements FEStorage {
+	public static final String DEFAULT_NBT_KEY = "fea_fe";
+
+	private final boolean allowInsertion;
+	private final boolean allowExtraction;
+	private final Runnable onFinalCommit;
+
+	private long amount;
+	private long capacity;
+	private FEStorageListeners listeners;
+
+	// slot -> packed pos / contributed capacity / view
+	private long[] memberPos = new long[8];
+	private long[] memberCapacity = new long[8];
+	private Member[] members = new Member[8];
+	private int size;
+	// packed pos -> slot
+	private final Long2IntOpenHashMap slotByPos = new Long2IntOpenHashMap();
+
+	public FEStoragePool(Runnable onFinalCommit) {
+		this(true, true, onFinalCommit);
+	}
+
+	public FEStoragePool(boolean allowInsertion, boolean allowExtraction, Runnable onFinalCommit) {
+		this.allowInsertion = allowInsertion;
+		this.allowExtraction = allowExtraction;
+		this.onFinalCommit = onFinalCommit;
+		slotByPos.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Add a member block contributing {@code memberCapacity} FE, or return the existing view if the position
+	 * is already a member.
+	 */
+	public Member addMember(BlockPos pos, long memberCapacity) {
+		if (memberCapacity < 0) throw new IllegalArgumentException("memberCapacity must be >= 0");
+		long p = pos.asLong();
+		int existing = slotByPos.get(p);
+		if (existing >= 0) return members[existing];
+
+		if (size == memberPos.length) {
+			int n = size * 2;
+			memberPos = Arrays.copyOf(memberPos, n);
+			this.memberCapacity = Arrays.copyOf(this.memberCapacity, n);
+			members = Arrays.copyOf(members, n);
+		}
+
+		int slot = size++;
+		Member view = new Member(pos.toImmutable(), slot);
+		memberPos[slot] = p;
+		this.memberCapacity[slot] = memberCapacity;
+		members[slot] = view;
+		slotByPos.put(p, slot);
+		capacity = satAdd(capacity, memberCapacity);
+		if (listeners != null) {
+			listeners.fire(this);
+		}
+		return view;
+	}
+
+	/**
+	 * Remove a member block. Its view is detached and stops accepting transfers.
+	 *
+	 * @return FE that no longer fits the reduced capacity and was discarded
+	 */
+	public long removeMember(BlockPos pos) {
+		long p = pos.asLong();
+		int slot = slotByPos.remove(p);
+		if (slot < 0) return 0;
+
+		members[slot].slot = -1;
+		int last = --size;
+		if (slot != last) {
+			memberPos[slot] = memberPos[last];
+			memberCapacity[slot] = memberCapacity[last];
+			members[slot] = members[last];
+			members[slot].slot = slot;
+			slotByPos.put(memberPos[slot], slot);
+		}
+		members[last] = null;
+
+		recomputeCapacity();
+		long lost = amount > capacity ? amount - capacity : 0;
+		if (lost > 0) {
+			amount = capacity;
+			if (onFinalCommit != null) {
+				onFinalCommit.run();
+			}
+		}
+		if (listeners != null) {
+			listeners.fire(this);
+		}
+		return lost;
+	}
+
+	/** The member view for {@code pos}, or null if the position is not part of this pool. */
+	public Member getMember(BlockPos pos) {
+		int slot = slotByPos.get(pos.asLong());
+		return slot < 0 ? null : members[slot];
+	}
+
+	public int getMemberCount() {
+		return size;
+	}
+
+	@Override
+	public long insert(long maxAmount, TransactionContext transaction) {
+		if (!allowInsertion || maxAmount <= 0) return 0;
+		updateSnapshots(transaction);
+
+		long space = capacity - amount;
+		long inserted = Math.min(space, maxAmount);
+		if (inserted > 0) {
+			amount += inserted;
+		}
+		return inserted;
+	}
+
+	@Override
+	public long extract(long maxAmount, TransactionContext transaction) {
+		if (!allowExtraction || maxAmount <= 0) return 0;
+		updateSnapshots(transaction);
+
+		long extracted = Math.min(amount, maxAmount);
+		if (extracted > 0) {
+			amount -= extracted;
+		}
+		return extracted;
+	}
+
+	@Override
+	public long getAmount() {
+		return amount;
+	}
+
+	@Override
+	public long getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public boolean supportsInsertion() {
+		return allowInsertion;
+	}
+
+	@Override
+	public boolean supportsExtraction() {
+		return allowExtraction;
+	}
+
+	@Override
+	public boolean addListener(FEStorageListener listener) {
+		if (listeners == null) listeners = new FEStorageListeners();
+		return listeners.add(listener);
+	}
+
+	@Override
+	public void removeListener(FEStorageListener listener) {
+		if (listeners != null) listeners.remove(listener);
+	}
+
+	/** Read the pooled amount. Call after members have been re-added so the value is clamped correctly. */
+	public void readFromNbt(NbtCompound nbt) {
+		readFromNbt(nbt, DEFAULT_NBT_KEY);
+	}
+
+	public void readFromNbt(NbtCompound nbt, String key) {
+		long previous = amount;
+		if (nbt == null) {
+			amount = 0;
+		} else {
+			String k = (key == null || key.isBlank()) ? DEFAULT_NBT_KEY : key;
+			amount = clamp(nbt.getLong(k));
+		}
+		if (amount != previous && listeners != null) {
+			listeners.fire(this);
+		}
+	}
+
+	public void writeToNbt(NbtCompound nbt) {
+		writeToNbt(nbt, DEFAULT_NBT_KEY);
+	}
+
+	public void writeToNbt(NbtCompound nbt, String key) {
+		if (nbt == null) return;
+		String k = (key == null || key.isBlank()) ? DEFAULT_NBT_KEY : key;
+		nbt.putLong(k, amount);
+	}
+
+	@Override
+	protected long createSnapshot() {
+		return amount;
+	}
+
+	@Override
+	protected void readSnapshot(long snapshot) {
+		amount = clamp(snapshot);
+	}
+
+	@Override
+	protected void onFinalCommit() {
+		if (amount == getOuterSnapshot()) return;
+		if (onFinalCommit != null) {
+			onFinalCommit.run();
+		}
+		if (listeners != null) {
+			listeners.fire(this);
+		}
+	}
+
+	private void recomputeCapacity() {
+		long total = 0;
+		for (int i = 0; i < size; i++) {
+			total = satAdd(total, memberCapacity[i]);
+		}
+		capacity = total;
+	}
+
+	private long clamp(long v) {
+		if (v < 0) return 0;
+		if (v > capacity) return capacity;
+		return v;
+	}
+
+	private static long satAdd(long a, long b) {
+		long r = a + b;
+		return r < 0 ? Long.MAX_VALUE : r;
+	}
+
+	/**
+	 * Per-block view of the pool. Amount and capacity are those of the whole pool.
+	 *
+	 * <p>A view detached by {@link #removeMember(BlockPos)} reports an empty, zero-capacity storage.
+	 */
+	public final class Member implements FEStorage {
+		private final BlockPos pos;
+		private int slot;
+
+		private Member(BlockPos pos, int slot) {
+			this.pos = pos;
+			this.slot = slot;
+		}
+
+		public BlockPos getPos() {
+			return pos;
+		}
+
+		public FEStoragePool getPool() {
+			return FEStoragePool.this;
+		}
+
+		public boolean isAttached() {
+			return slot >= 0;
+		}
+
+		@Override
+		public long insert(long maxAmount, TransactionContext transaction) {
+			if (slot < 0) return 0;
+			return FEStoragePool.this.insert(maxAmount, transaction);
+		}
+
+		@Override
+		public long extract(long maxAmount, TransactionContext transaction) {
+			if (slot < 0) return 0;
+			return FEStoragePool.this.extract(maxAmount, transaction);
+		}
+
+		@Override
+		public long getAmount() {
+			return slot < 0 ? 0 : amount;
+		}
+
+		@Override
+		public long getCapacity() {
+			return slot < 0 ? 0 : capacity;
+		}
+
+		@Override
+		public boolean supportsInsertion() {
+			return slot >= 0 && allowInsertion;
+		}
+
+		@Override
+		public boolean supportsExtraction() {
+			return slot >= 0 && allowExtraction;
+		}
+
+		@Override
+		public FEStorage getBackingStorage() {
+			return FEStoragePool.this;
+		}
+
+		@Override
+		public boolean addListener(FEStorageListener listener) {
+			return FEStoragePool.this.addListener(listener);
+		}
+
+		@Override
+		public void removeListener(FEStorageListener listener) {
+			FEStoragePool.this.removeListener(listener);
+		}
+	}
+}
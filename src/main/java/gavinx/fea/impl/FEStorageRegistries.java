@@ -0,0 +1,28 @@
+package gavinx.fea.impl;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.minecraft.server.world.ServerWorld;
+
+/**
+ * Static access to optional per-world {@link FEStorageRegistry} instances.
+ *
+ * <p>Nothing is created unless a mod asks for a world's registry. Call {@link #setOffHeap(boolean)} during mod
+ * init to choose where registries created afterwards keep their columns.
+ */
+public final class FEStorageRegistries {
+	private FEStorageRegistries() {}
+
+	private static final Map<ServerWorld, FEStorageRegistry> REGISTRIES = new WeakHashMap<>();
+	private static volatile boolean offHeap;
+
+	public static synchronized FEStorageRegistry get(ServerWorld world) {
+		return REGISTRIES.computeIfAbsent(world, w -> new FEStorageRegistry(offHeap));
+	}
+
+	/** Whether registries created after this call store amounts/capacities in direct (off-heap) buffers. */
+	public static void setOffHeap(boolean value) {
+		offHeap = value;
+	}
+}
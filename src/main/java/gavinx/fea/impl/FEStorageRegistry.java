@@ -0,0 +1,485 @@
+package gavinx.fea.impl;
+
+import gavinx.fea.api.FEStorage;
+import gavinx.fea.api.FEStorageListener;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
+import net.minecraft.nbt.NbtCompound;
+
+/**
+ * Columnar store for large numbers of small FE buffers.
+ *
+ * <p>Amounts and capacities live in primitive columns (heap {@code long[]} or, optionally, direct
+ * {@link ByteBuffer}s) indexed by a compact {@code int} handle. {@link #view(int)} returns a thin
+ * {@link FEStorage} flyweight over a handle, so a block entity only needs to keep the view (or the handle).
+ *
+ * <p>The registry is a single transaction participant: instead of one snapshot list per storage it keeps a
+ * primitive undo journal of {@code (handle, previous amount)} entries per nesting depth. Aborts replay the
+ * journal backwards, commits hand it to the parent transaction, and the outer commit fires the per-handle
+ * commit callbacks and {@link FEStorageListener}s of handles whose amount changed.
+ *
+ * <p>Not thread-safe; use from the server thread. {@link #allocate}, {@link #free}, {@link #setAmount} and
+ * {@link #setCapacity} must not be called while a transaction is open.
+ */
+public final class FEStorageRegistry implements TransactionContext.CloseCallback, TransactionContext.OuterCloseCallback {
+	public static final String DEFAULT_NBT_KEY = "fea_fe";
+
+	private static final byte FLAG_USED = 1;
+	private static final byte FLAG_INSERT = 2;
+	private static final byte FLAG_EXTRACT = 4;
+
+	private final LongColumn amounts;
+	private final LongColumn capacities;
+	private byte[] flags;
+	private Runnable[] onFinalCommit;
+	private FEStorageListeners[] listeners;
+	private View[] views;
+	private int[] commitStamp;
+	private int size;
+
+	private int[] freeHandles = new int[16];
+	private int freeCount;
+	private int live;
+
+	// Undo journal: entries [depthMark[d], journalSize) belong to the open transaction at depth d.
+	private int[] journalHandle = new int[64];
+	private long[] journalAmount = new long[64];
+	private int journalSize;
+	private int[] depthMark = new int[4];
+	private boolean[] registered = new boolean[4];
+
+	private int[] pendingCommit = new int[64];
+	private int stamp;
+
+	public FEStorageRegistry(boolean offHeap) {
+		this(offHeap, 256);
+	}
+
+	public FEStorageRegistry(boolean offHeap, int initialCapacity) {
+		int n = Math.max(16, initialCapacity);
+		this.amounts = offHeap ? new DirectColumn(n) : new HeapColumn(n);
+		this.capacities = offHeap ? new DirectColumn(n) : new HeapColumn(n);
+		this.flags = new byte[n];
+		this.onFinalCommit = new Runnable[n];
+		this.listeners = new FEStorageListeners[n];
+		this.views = new View[n];
+		this.commitStamp = new int[n];
+	}
+
+	/**
+	 * Allocate a storage with insertion and extraction enabled.
+	 *
+	 * @return the handle of the new storage
+	 */
+	public int allocate(long capacity, long initialAmount, Runnable onFinalCommit) {
+		return allocate(capacity, initialAmount, true, true, onFinalCommit);
+	}
+
+	public int allocate(long capacity, long initialAmount, boolean allowInsertion, boolean allowExtraction,
+			Runnable onFinalCommit) {
+		if (capacity < 0) throw new IllegalArgumentException("capacity must be >= 0");
+		if (initialAmount < 0) throw new IllegalArgumentException("initialAmount must be >= 0");
+
+		int handle;
+		if (freeCount > 0) {
+			handle = freeHandles[--freeCount];
+		} else {
+			if (size == flags.length) grow(size * 2);
+			handle = size++;
+		}
+
+		byte f = FLAG_USED;
+		if (allowInsertion) f |= FLAG_INSERT;
+		if (allowExtraction) f |= FLAG_EXTRACT;
+		flags[handle] = f;
+		capacities.set(handle, capacity);
+		amounts.set(handle, Math.min(initialAmount, capacity));
+		this.onFinalCommit[handle] = onFinalCommit;
+		live++;
+		return handle;
+	}
+
+	/** Release a handle. Views over it become empty and the handle may be reused by a later allocation. */
+	public void free(int handle) {
+		if (!isValid(handle)) return;
+		flags[handle] = 0;
+		amounts.set(handle, 0);
+		capacities.set(handle, 0);
+		onFinalCommit[handle] = null;
+		listeners[handle] = null;
+		if (views[handle] != null) {
+			views[handle].handle = -1;
+			views[handle] = null;
+		}
+		if (freeCount == freeHandles.length) {
+			freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+		}
+		freeHandles[freeCount++] = handle;
+		live--;
+	}
+
+	public boolean isValid(int handle) {
+		return handle >= 0 && handle < size && flags[handle] != 0;
+	}
+
+	/** Number of allocated handles. */
+	public int size() {
+		return live;
+	}
+
+	/** The canonical flyweight view for {@code handle}; repeated calls return the same instance. */
+	public View view(int handle) {
+		if (!isValid(handle)) throw new IllegalArgumentException("invalid handle " + handle);
+		View v = views[handle];
+		if (v == null) {
+			v = new View(handle);
+			views[handle] = v;
+		}
+		return v;
+	}
+
+	public long getAmount(int handle) {
+		return isValid(handle) ? amounts.get(handle) : 0;
+	}
+
+	public long getCapacity(int handle) {
+		return isValid(handle) ? capacities.get(handle) : 0;
+	}
+
+	/** Set the amount outside of a transaction (e.g. when loading NBT). Clamped to the capacity. */
+	public void setAmount(int handle, long amount) {
+		if (!isValid(handle)) return;
+		long previous = amounts.get(handle);
+		amounts.set(handle, clamp(amount, capacities.get(handle)));
+		if (amounts.get(handle) != previous) {
+			fireListeners(handle);
+		}
+	}
+
+	/** Change the capacity outside of a transaction. The amount is clamped to the new capacity. */
+	public void setCapacity(int handle, long capacity) {
+		if (capacity < 0) throw new IllegalArgumentException("capacity must be >= 0");
+		if (!isValid(handle)) return;
+		capacities.set(handle, capacity);
+		amounts.set(handle, Math.min(amounts.get(handle), capacity));
+		fireListeners(handle);
+	}
+
+	/** Register a listener for one handle; see {@link FEStorage#addListener(FEStorageListener)}. */
+	public boolean addListener(int handle, FEStorageListener listener) {
+		if (!isValid(handle)) return false;
+		if (listeners[handle] == null) listeners[handle] = new FEStorageListeners();
+		return listeners[handle].add(listener);
+	}
+
+	public void removeListener(int handle, FEStorageListener listener) {
+		if (!isValid(handle) || listeners[handle] == null) return;
+		listeners[handle].remove(listener);
+		if (listeners[handle].isEmpty()) listeners[handle] = null;
+	}
+
+	public long insert(int handle, long maxAmount, TransactionContext transaction) {
+		if (maxAmount <= 0 || !isValid(handle) || (flags[handle] & FLAG_INSERT) == 0) return 0;
+
+		long amount = amounts.get(handle);
+		long inserted = Math.min(capacities.get(handle) - amount, maxAmount);
+		if (inserted <= 0) return 0;
+
+		journal(handle, amount, transaction);
+		amounts.set(handle, amount + inserted);
+		return inserted;
+	}
+
+	public long extract(int handle, long maxAmount, TransactionContext transaction) {
+		if (maxAmount <= 0 || !isValid(handle) || (flags[handle] & FLAG_EXTRACT) == 0) return 0;
+
+		long amount = amounts.get(handle);
+		long extracted = Math.min(amount, maxAmount);
+		if (extracted <= 0) return 0;
+
+		journal(handle, amount, transaction);
+		amounts.set(handle, amount - extracted);
+		return extracted;
+	}
+
+	/** Saturating sum of the amounts of {@code handles[0..count)}. Invalid handles count as empty. */
+	public long sumAmounts(int[] handles, int count) {
+		long total = 0;
+		for (int i = 0; i < count; i++) {
+			int h = handles[i];
+			if (!isValid(h)) continue;
+			total = satAdd(total, amounts.get(h));
+		}
+		return total;
+	}
+
+	/** Saturating sum of the capacities of {@code handles[0..count)}. Invalid handles count as empty. */
+	public long sumCapacities(int[] handles, int count) {
+		long total = 0;
+		for (int i = 0; i < count; i++) {
+			int h = handles[i];
+			if (!isValid(h)) continue;
+			total = satAdd(total, capacities.get(h));
+		}
+		return total;
+	}
+
+	/** Saturating sum of the free space of {@code handles[0..count)} that accept insertion. */
+	public long sumInsertableSpace(int[] handles, int count) {
+		long total = 0;
+		for (int i = 0; i < count; i++) {
+			int h = handles[i];
+			if (!isValid(h) || (flags[h] & FLAG_INSERT) == 0) continue;
+			total = satAdd(total, capacities.get(h) - amounts.get(h));
+		}
+		return total;
+	}
+
+	/** Saturating sum of the amounts of every allocated storage. */
+	public long sumAllAmounts() {
+		long total = 0;
+		for (int h = 0; h < size; h++) {
+			if (flags[h] == 0) continue;
+			total = satAdd(total, amounts.get(h));
+		}
+		return total;
+	}
+
+	private void journal(int handle, long previous, TransactionContext transaction) {
+		int depth = transaction.nestingDepth();
+		ensureDepth(depth);
+		if (!registered[depth]) {
+			registered[depth] = true;
+			depthMark[depth] = journalSize;
+			transaction.addCloseCallback(this);
+		}
+
+		if (journalSize == journalHandle.length) {
+			journalHandle = Arrays.copyOf(journalHandle, journalSize * 2);
+			journalAmount = Arrays.copyOf(journalAmount, journalSize * 2);
+		}
+		journalHandle[journalSize] = handle;
+		journalAmount[journalSize] = previous;
+		journalSize++;
+	}
+
+	@Override
+	public void onClose(TransactionContext transaction, TransactionContext.Result result) {
+		int depth = transaction.nestingDepth();
+		int mark = depthMark[depth];
+		registered[depth] = false;
+
+		if (result.wasAborted()) {
+			for (int i = journalSize - 1; i >= mark; i--) {
+				amounts.set(journalHandle[i], journalAmount[i]);
+			}
+			journalSize = mark;
+		} else if (depth > 0) {
+			// The entries now belong to the parent; if it has none yet they start at our mark.
+			if (!registered[depth - 1]) {
+				registered[depth - 1] = true;
+				depthMark[depth - 1] = mark;
+				transaction.getOpenTransaction(depth - 1).addCloseCallback(this);
+			}
+		} else {
+			transaction.addOuterCloseCallback(this);
+		}
+	}
+
+	@Override
+	public void afterOuterClose(TransactionContext.Result result) {
+		// Collect the distinct touched handles first: callbacks may open new transactions.
+		int s = ++stamp;
+		if (s == 0) {
+			Arrays.fill(commitStamp, 0);
+			s = stamp = 1;
+		}
+		int pending = 0;
+		for (int i = 0; i < journalSize; i++) {
+			int h = journalHandle[i];
+			if (commitStamp[h] == s) continue;
+			commitStamp[h] = s;
+			// The first entry of a handle holds its amount from before the transaction.
+			if (journalAmount[i] == amounts.get(h)) continue;
+			if (onFinalCommit[h] == null && listeners[h] == null) continue;
+			if (pending == pendingCommit.length) {
+				pendingCommit = Arrays.copyOf(pendingCommit, pending * 2);
+			}
+			pendingCommit[pending++] = h;
+		}
+		journalSize = 0;
+
+		for (int i = 0; i < pending; i++) {
+			int h = pendingCommit[i];
+			Runnable r = onFinalCommit[h];
+			if (r != null) r.run();
+			fireListeners(h);
+		}
+	}
+
+	private void fireListeners(int handle) {
+		FEStorageListeners l = listeners[handle];
+		if (l != null) {
+			l.fire(view(handle));
+		}
+	}
+
+	private void ensureDepth(int depth) {
+		if (depth < registered.length) return;
+		int n = Math.max(depth + 1, registered.length * 2);
+		registered = Arrays.copyOf(registered, n);
+		depthMark = Arrays.copyOf(depthMark, n);
+	}
+
+	private void grow(int n) {
+		amounts.grow(n);
+		capacities.grow(n);
+		flags = Arrays.copyOf(flags, n);
+		onFinalCommit = Arrays.copyOf(onFinalCommit, n);
+		listeners = Arrays.copyOf(listeners, n);
+		views = Arrays.copyOf(views, n);
+		commitStamp = Arrays.copyOf(commitStamp, n);
+	}
+
+	private static long clamp(long v, long capacity) {
+		if (v < 0) return 0;
+		if (v > capacity) return capacity;
+		return v;
+	}
+
+	private static long satAdd(long a, long b) {
+		if (b <= 0) return a;
+		long r = a + b;
+		return r < 0 ? Long.MAX_VALUE : r;
+	}
+
+	/** Flyweight {@link FEStorage} over one handle. Holds no state besides the handle. */
+	public final class View implements FEStorage {
+		private int handle;
+
+		private View(int handle) {
+			this.handle = handle;
+		}
+
+		/** The handle this view refers to, or -1 once it was freed. */
+		public int getHandle() {
+			return handle;
+		}
+
+		public FEStorageRegistry getRegistry() {
+			return FEStorageRegistry.this;
+		}
+
+		@Override
+		public long insert(long maxAmount, TransactionContext transaction) {
+			return FEStorageRegistry.this.insert(handle, maxAmount, transaction);
+		}
+
+		@Override
+		public long extract(long maxAmount, TransactionContext transaction) {
+			return FEStorageRegistry.this.extract(handle, maxAmount, transaction);
+		}
+
+		@Override
+		public long getAmount() {
+			return FEStorageRegistry.this.getAmount(handle);
+		}
+
+		@Override
+		public long getCapacity() {
+			return FEStorageRegistry.this.getCapacity(handle);
+		}
+
+		@Override
+		public boolean supportsInsertion() {
+			return isValid(handle) && (flags[handle] & FLAG_INSERT) != 0;
+		}
+
+		@Override
+		public boolean supportsExtraction() {
+			return isValid(handle) && (flags[handle] & FLAG_EXTRACT) != 0;
+		}
+
+		@Override
+		public boolean addListener(FEStorageListener listener) {
+			return FEStorageRegistry.this.addListener(handle, listener);
+		}
+
+		@Override
+		public void removeListener(FEStorageListener listener) {
+			FEStorageRegistry.this.removeListener(handle, listener);
+		}
+
+		public void readFromNbt(NbtCompound nbt) {
+			setAmount(handle, nbt == null ? 0 : nbt.getLong(DEFAULT_NBT_KEY));
+		}
+
+		public void writeToNbt(NbtCompound nbt) {
+			if (nbt == null) return;
+			nbt.putLong(DEFAULT_NBT_KEY, getAmount());
+		}
+	}
+
+	private abstract static class LongColumn {
+		abstract long get(int index);
+
+		abstract void set(int index, long value);
+
+		abstract void grow(int size);
+	}
+
+	private static final class HeapColumn extends LongColumn {
+		private long[] values;
+
+		HeapColumn(int size) {
+			values = new long[size];
+		}
+
+		@Override
+		long get(int index) {
+			return values[index];
+		}
+
+		@Override
+		void set(int index, long value) {
+			values[index] = value;
+		}
+
+		@Override
+		void grow(int size) {
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+	private static final class DirectColumn extends LongColumn {
+		private ByteBuffer values;
+
+		DirectColumn(int size) {
+			values = ByteBuffer.allocateDirect(size * Long.BYTES).order(ByteOrder.nativeOrder());
+		}
+
+		@Override
+		long get(int index) {
+			return values.getLong(index * Long.BYTES);
+		}
+
+		@Override
+		void set(int index, long value) {
+			values.putLong(index * Long.BYTES, value);
+		}
+
+		@Override
+		void grow(int size) {
+			ByteBuffer next = ByteBuffer.allocateDirect(size * Long.BYTES).order(ByteOrder.nativeOrder());
+			ByteBuffer src = values.duplicate();
+			src.clear();
+			next.put(src);
+			next.clear();
+			values = next;
+		}
+	}
+}
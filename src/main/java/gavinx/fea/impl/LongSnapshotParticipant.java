@@ -0,0 +1,82 @@
+package gavinx.fea.impl;
+
+import java.util.Arrays;
+
+import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
+import net.fabricmc.fabric.api.transfer.v1.transaction.base.SnapshotParticipant;
+
+/**
+ * Primitive-specialized variant of {@link SnapshotParticipant} for state that fits in a single {@code long}
+ * (typically an FE amount).
+ *
+ * <p>Snapshots are kept in a {@code long[]} indexed by transaction nesting depth, so taking a snapshot never
+ * boxes. Commit/abort semantics match {@link SnapshotParticipant}: an aborted transaction restores the snapshot
+ * taken at its depth, a committed nested transaction hands its snapshot to the parent (unless the parent already
+ * has an older one), and {@link #onFinalCommit()} runs once after the outer transaction commits.
+ */
+public abstract class LongSnapshotParticipant implements TransactionContext.CloseCallback,
+		TransactionContext.OuterCloseCallback {
+	private long[] snapshots = new long[4];
+	private boolean[] present = new boolean[4];
+	private long outerSnapshot;
+
+	/** Return the current state as a snapshot. */
+	protected abstract long createSnapshot();
+
+	/** Restore a snapshot previously returned by {@link #createSnapshot()}. */
+	protected abstract void readSnapshot(long snapshot);
+
+	/** Called after the outermost transaction that touched this participant was committed. */
+	protected void onFinalCommit() {}
+
+	/**
+	 * The state before the outer transaction that just committed. Only meaningful inside {@link #onFinalCommit()},
+	 * where comparing it with the current state tells whether anything actually changed.
+	 */
+	protected final long getOuterSnapshot() {
+		return outerSnapshot;
+	}
+
+	/** Take a snapshot for the given transaction if none exists yet at its nesting depth. */
+	public void updateSnapshots(TransactionContext transaction) {
+		int depth = transaction.nestingDepth();
+		if (depth >= present.length) {
+			int size = Math.max(depth + 1, present.length * 2);
+			snapshots = Arrays.copyOf(snapshots, size);
+			present = Arrays.copyOf(present, size);
+		}
+
+		if (!present[depth]) {
+			snapshots[depth] = createSnapshot();
+			present[depth] = true;
+			transaction.addCloseCallback(this);
+		}
+	}
+
+	@Override
+	public void onClose(TransactionContext transaction, TransactionContext.Result result) {
+		int depth = transaction.nestingDepth();
+		long snapshot = snapshots[depth];
+		present[depth] = false;
+
+		if (result.wasAborted()) {
+			readSnapshot(snapshot);
+		} else if (depth > 0) {
+			if (!present[depth - 1]) {
+				// First snapshot at the parent level: move it up and listen for the parent closing.
+				snapshots[depth - 1] = snapshot;
+				present[depth - 1] = true;
+				transaction.getOpenTransaction(depth - 1).addCloseCallback(this);
+			}
+		} else {
+			outerSnapshot = snapshot;
+			transaction.addOuterCloseCallback(this);
+		}
+	}
+
+	@Override
+	public void afterOuterClose(TransactionContext.Result result) {
+		// Only registered on commit, so the result is always COMMITTED.
+		onFinalCommit();
+	}
+}
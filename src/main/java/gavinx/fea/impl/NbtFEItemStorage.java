@@ -1,9 +1,9 @@
 package gavinx.fea.impl;
 
 import gavinx.fea.api.FEStorage;
+import gavinx.fea.api.FEStorageListener;
 
 import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
-import net.fabricmc.fabric.api.transfer.v1.transaction.base.SnapshotParticipant;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NbtCompound;
 
@@ -12,7 +12,7 @@ import net.minecraft.nbt.NbtCompound;
  *
  * <p>This is intentionally simple; mods may want more robust wrappers (e.g. inventory contexts).
  */
-public final class NbtFEItemStorage extends SnapshotParticipant<Long> implements FEStorage {
+public final class NbtFEItemStorage extends LongSnapshotParticipant implements FEStorage {
 	public static final String DEFAULT_NBT_KEY = "fea_fe";
 
 	private final ItemStack stack;
@@ -21,7 +21,7 @@ public final class NbtFEItemStorage extends SnapshotParticipant<Long> implements
 	private final boolean allowInsertion;
 	private final boolean allowExtraction;
 	private long amount;
-	private boolean changed;
+	private FEStorageListeners listeners;
 
 	public NbtFEItemStorage(ItemStack stack, long capacity) {
 		this(stack, capacity, DEFAULT_NBT_KEY, true, true);
@@ -47,7 +47,6 @@ public final class NbtFEItemStorage extends SnapshotParticipant<Long> implements
 		long inserted = Math.min(space, maxAmount);
 		if (inserted > 0) {
 			amount += inserted;
-			changed = true;
 		}
 		return inserted;
 	}
@@ -60,7 +59,6 @@ public final class NbtFEItemStorage extends SnapshotParticipant<Long> implements
 		long extracted = Math.min(amount, maxAmount);
 		if (extracted > 0) {
 			amount -= extracted;
-			changed = true;
 		}
 		return extracted;
 	}
@@ -86,21 +84,33 @@ public final class NbtFEItemStorage extends SnapshotParticipant<Long> implements
 	}
 
 	@Override
-	protected Long createSnapshot() {
+	public boolean addListener(FEStorageListener listener) {
+		if (listeners == null) listeners = new FEStorageListeners();
+		return listeners.add(listener);
+	}
+
+	@Override
+	public void removeListener(FEStorageListener listener) {
+		if (listeners != null) listeners.remove(listener);
+	}
+
+	@Override
+	protected long createSnapshot() {
 		return amount;
 	}
 
 	@Override
-	protected void readSnapshot(Long snapshot) {
-		amount = clamp(snapshot == null ? 0 : snapshot);
-		changed = false;
+	protected void readSnapshot(long snapshot) {
+		amount = clamp(snapshot);
 	}
 
 	@Override
 	protected void onFinalCommit() {
-		if (!changed) return;
-		changed = false;
+		if (amount == getOuterSnapshot()) return;
 		writeAmountToNbt(amount);
+		if (listeners != null) {
+			listeners.fire(this);
+		}
 	}
 
 	private long readAmountFromNbt() {
@@ -1,15 +1,16 @@
 package gavinx.fea.impl;
 
 import gavinx.fea.api.FEStorage;
+import gavinx.fea.api.FEStorageListener;
 
 import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
-import net.fabricmc.fabric.api.transfer.v1.transaction.base.SnapshotParticipant;
 
-public final class SimpleFEStorage extends SnapshotParticipant<Long> implements FEStorage {
+public final class SimpleFEStorage extends LongSnapshotParticipant implements FEStorage {
 	private final long capacity;
 	private long amount;
 	private final boolean allowInsertion;
 	private final boolean allowExtraction;
+	private FEStorageListeners listeners;
 
 	public SimpleFEStorage(long capacity, long initialAmount, boolean allowInsertion, boolean allowExtraction) {
 		if (capacity < 0) throw new IllegalArgumentException("capacity must be >= 0");
@@ -66,12 +67,30 @@ public final class SimpleFEStorage extends SnapshotParticipant<Long> implements
 	}
 
 	@Override
-	protected Long createSnapshot() {
+	public boolean addListener(FEStorageListener listener) {
+		if (listeners == null) listeners = new FEStorageListeners();
+		return listeners.add(listener);
+	}
+
+	@Override
+	public void removeListener(FEStorageListener listener) {
+		if (listeners != null) listeners.remove(listener);
+	}
+
+	@Override
+	protected long createSnapshot() {
 		return amount;
 	}
 
 	@Override
-	protected void readSnapshot(Long snapshot) {
+	protected void readSnapshot(long snapshot) {
 		amount = snapshot;
 	}
+
+	@Override
+	protected void onFinalCommit() {
+		if (listeners != null && amount != getOuterSnapshot()) {
+			listeners.fire(this);
+		}
+	}
 }
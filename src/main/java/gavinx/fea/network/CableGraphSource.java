@@ -0,0 +1,42 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FEBlockEnergy;
+import gavinx.fea.api.FECable;
+import gavinx.fea.api.FELinkPoint;
+import gavinx.fea.api.FESideMode;
+import gavinx.fea.api.FEStorage;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * Where cable networks look up topology and endpoints.
+ *
+ * <p>{@link WorldCableGraphSource} answers from a {@code ServerWorld} through the {@link gavinx.fea.api.FEApi}
+ * lookups; {@link InMemoryCableGraphSource} answers from maps, so networks can be built, ticked and measured
+ * without a running server (see {@code FEHeadlessSimulator} in the benchmark sources).
+ */
+public interface CableGraphSource {
+	/** @see gavinx.fea.api.FEApi#CABLE */
+	FECable findCable(BlockPos pos, Direction side);
+
+	/** @see gavinx.fea.api.FEApi#STORAGE */
+	FEStorage findStorage(BlockPos pos, Direction side);
+
+	/** @see gavinx.fea.api.FEApi#BLOCK_ENERGY */
+	FEBlockEnergy findBlockEnergy(BlockPos pos);
+
+	/**
+	 * Side mode of {@code def}, the {@link #findBlockEnergy(BlockPos)} result at {@code pos}. Sources that cache
+	 * capabilities answer from their cache.
+	 */
+	default FESideMode sideMode(FEBlockEnergy def, BlockPos pos, Direction side) {
+		return def.getSideMode(side);
+	}
+
+	/** @see gavinx.fea.api.FEApi#LINK_POINT */
+	FELinkPoint findLinkPoint(BlockPos pos, Direction side);
+
+	/** Monotonic tick counter used for parking sources. */
+	long getTime();
+}
@@ -0,0 +1,120 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FEBlockEnergy;
+import gavinx.fea.api.FECable;
+import gavinx.fea.api.FELinkPoint;
+import gavinx.fea.api.FESideMode;
+import gavinx.fea.api.FEStorage;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * {@link CableGraphSource} that remembers endpoint capabilities per block position: the {@link FEBlockEnergy}, its six
+ * side modes packed into 12 bits, and the six sided {@link FEStorage}s (resolved on first use). Misses are cached too.
+ *
+ * <p>Cables and link points are not cached; networks only look them up while being rebuilt.
+ *
+ * <p>Entries are grouped by chunk so a chunk (un)load drops its entries at once. The owning
+ * {@link FECableNetworkManager} invalidates a position on block changes and on
+ * {@link FECableNetworkManager#onSideConfigChanged(BlockPos) side config changes}.
+ */
+final class CachingCableGraphSource implements CableGraphSource {
+	private static final FESideMode[] MODES = FESideMode.values();
+
+	private final CableGraphSource delegate;
+	// chunk -> pos -> entry
+	private final Long2ObjectOpenHashMap<Long2ObjectOpenHashMap<Entry>> chunks = new Long2ObjectOpenHashMap<>();
+
+	CachingCableGraphSource(CableGraphSource delegate) {
+		this.delegate = delegate;
+	}
+
+	private static final class Entry {
+		final FEBlockEnergy def;
+		// 2 bits per side (FESideMode ordinal), valid if def != null
+		final short modes;
+		final FEStorage[] storage = new FEStorage[6];
+		// bit per side: storage[side] was looked up
+		byte resolved;
+
+		Entry(FEBlockEnergy def, short modes) {
+			this.def = def;
+			this.modes = modes;
+		}
+	}
+
+	private Entry entry(BlockPos pos) {
+		long chunk = ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4);
+		Long2ObjectOpenHashMap<Entry> entries = chunks.get(chunk);
+		if (entries == null) {
+			entries = new Long2ObjectOpenHashMap<>();
+			chunks.put(chunk, entries);
+		}
+		long p = pos.asLong();
+		Entry entry = entries.get(p);
+		if (entry == null) {
+			FEBlockEnergy def = delegate.findBlockEnergy(pos);
+			int modes = 0;
+			if (def != null) {
+				for (Direction side : Direction.values()) {
+					modes |= def.getSideMode(side).ordinal() << (side.getId() * 2);
+				}
+			}
+			entry = new Entry(def, (short) modes);
+			entries.put(p, entry);
+		}
+		return entry;
+	}
+
+	void invalidate(BlockPos pos) {
+		Long2ObjectOpenHashMap<Entry> entries = chunks.get(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4));
+		if (entries == null) return;
+		entries.remove(pos.asLong());
+	}
+
+	void invalidateChunk(ChunkPos chunkPos) {
+		chunks.remove(chunkPos.toLong());
+	}
+
+	@Override
+	public FECable findCable(BlockPos pos, Direction side) {
+		return delegate.findCable(pos, side);
+	}
+
+	@Override
+	public FEStorage findStorage(BlockPos pos, Direction side) {
+		Entry entry = entry(pos);
+		int bit = 1 << side.getId();
+		if ((entry.resolved & bit) == 0) {
+			entry.storage[side.getId()] = delegate.findStorage(pos, side);
+			entry.resolved |= (byte) bit;
+		}
+		return entry.storage[side.getId()];
+	}
+
+	@Override
+	public FEBlockEnergy findBlockEnergy(BlockPos pos) {
+		return entry(pos).def;
+	}
+
+	@Override
+	public FESideMode sideMode(FEBlockEnergy def, BlockPos pos, Direction side) {
+		Entry entry = entry(pos);
+		if (entry.def != def) return def.getSideMode(side);
+		return MODES[(entry.modes >>> (side.getId() * 2)) & 3];
+	}
+
+	@Override
+	public FELinkPoint findLinkPoint(BlockPos pos, Direction side) {
+		return delegate.findLinkPoint(pos, side);
+	}
+
+	@Override
+	public long getTime() {
+		return delegate.getTime();
+	}
+}
@@ -0,0 +1,249 @@
+package gavinx.fea.network;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.Arrays;
+
+import net.minecraft.util.math.Direction;
+
+/**
+ * Compiled topology of one cable network.
+ *
+ * <p>Nodes are cable positions. Directed edges carry the resistance (ppm) and capacity of entering the target node,
+ * so {@code u -> v} over a plain cable face uses the values of {@code v}'s entered face and a link edge adds the
+ * losses/limits of both ports. Each node also lists its endpoint faces: the non-cable neighbours (block pos +
+ * the side of that block facing the cable) that may expose storage.
+ *
+ * <p>All adjacency is stored CSR-style in primitive arrays and is immutable once built.
+ */
+final class FECableGraph {
+	final long[] nodePos;
+	private final Long2IntOpenHashMap nodeIndex;
+
+	// out-edges of node n: [edgeStart[n], edgeStart[n + 1])
+	final int[] edgeStart;
+	final int[] edgeTo;
+	final int[] edgeRes;
+	final long[] edgeCap;
+
+	// endpoint faces of node n: [faceStart[n], faceStart[n + 1])
+	final int[] faceStart;
+	final long[] facePos;
+	final byte[] faceSide;
+
+	// reverse adjacency, only needed by incremental route maintenance
+	private int[] inStart;
+	private int[] inEdges;
+	private int[] edgeFrom;
+	// this graph with every edge reversed, only needed by pulls
+	private FECableGraph reversed;
+
+	private FECableGraph(long[] nodePos, Long2IntOpenHashMap nodeIndex, int[] edgeStart, int[] edgeTo, int[] edgeRes,
+			long[] edgeCap, int[] faceStart, long[] facePos, byte[] faceSide) {
+		this.nodePos = nodePos;
+		this.nodeIndex = nodeIndex;
+		this.edgeStart = edgeStart;
+		this.edgeTo = edgeTo;
+		this.edgeRes = edgeRes;
+		this.edgeCap = edgeCap;
+		this.faceStart = faceStart;
+		this.facePos = facePos;
+		this.faceSide = faceSide;
+	}
+
+	int nodeCount() {
+		return nodePos.length;
+	}
+
+	int faceCount() {
+		return facePos.length;
+	}
+
+	/** Node index of a cable position, or -1. */
+	int indexOf(long pos) {
+		return nodeIndex.get(pos);
+	}
+
+	Direction faceSide(int face) {
+		return Direction.byId(faceSide[face]);
+	}
+
+	int edgeCount() {
+		return edgeTo.length;
+	}
+
+	/** The edge {@code from -> to} with the lowest resistance, then highest capacity, or -1. */
+	int bestEdge(int from, int to) {
+		int best = -1;
+		for (int e = edgeStart[from]; e < edgeStart[from + 1]; e++) {
+			if (edgeTo[e] != to) continue;
+			if (best < 0 || edgeRes[e] < edgeRes[best] || (edgeRes[e] == edgeRes[best] && edgeCap[e] > edgeCap[best])) {
+				best = e;
+			}
+		}
+		return best;
+	}
+
+	/** In-edges of node n, as edge indices: {@code inEdges()[inStart()[n] .. inStart()[n + 1])}. Built lazily. */
+	int[] inStart() {
+		if (inStart == null) buildInEdges();
+		return inStart;
+	}
+
+	int[] inEdges() {
+		if (inEdges == null) buildInEdges();
+		return inEdges;
+	}
+
+	/** Source node of every edge. Built lazily. */
+	int[] edgeFrom() {
+		if (edgeFrom == null) buildInEdges();
+		return edgeFrom;
+	}
+
+	/**
+	 * The same nodes and faces with every edge reversed, keeping its resistance and capacity. Paths to a node in the
+	 * reversed graph are paths from it in this one. Built lazily.
+	 */
+	FECableGraph reversed() {
+		if (reversed == null) {
+			int[] start = inStart();
+			int[] in = inEdges();
+			int[] from = edgeFrom();
+			int[] to = new int[in.length];
+			int[] res = new int[in.length];
+			long[] cap = new long[in.length];
+			for (int i = 0; i < in.length; i++) {
+				to[i] = from[in[i]];
+				res[i] = edgeRes[in[i]];
+				cap[i] = edgeCap[in[i]];
+			}
+			reversed = new FECableGraph(nodePos, nodeIndex, start, to, res, cap, faceStart, facePos, faceSide);
+		}
+		return reversed;
+	}
+
+	private void buildInEdges() {
+		int n = nodeCount();
+		int[] start = new int[n + 1];
+		int[] from = new int[edgeTo.length];
+		for (int u = 0; u < n; u++) {
+			for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+				from[e] = u;
+				start[edgeTo[e] + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			start[i + 1] += start[i];
+		}
+		int[] fill = Arrays.copyOf(start, n);
+		int[] in = new int[edgeTo.length];
+		for (int e = 0; e < edgeTo.length; e++) {
+			in[fill[edgeTo[e]]++] = e;
+		}
+		edgeFrom = from;
+		inEdges = in;
+		inStart = start;
+	}
+
+	/** Accumulates nodes, edges and faces in discovery order, then compacts them into CSR arrays. */
+	static final class Builder {
+		private long[] nodes = new long[16];
+		private int nodeCount;
+		private final Long2IntOpenHashMap index = new Long2IntOpenHashMap();
+
+		private int[] eFrom = new int[32];
+		private int[] eTo = new int[32];
+		private int[] eRes = new int[32];
+		private long[] eCap = new long[32];
+		private int edgeCount;
+
+		private int[] fNode = new int[16];
+		private long[] fPos = new long[16];
+		private byte[] fSide = new byte[16];
+		private int faceCount;
+
+		Builder() {
+			index.defaultReturnValue(-1);
+		}
+
+		/** @return the node index, adding the node if it is new */
+		int node(long pos) {
+			int i = index.get(pos);
+			if (i >= 0) return i;
+			if (nodeCount == nodes.length) nodes = Arrays.copyOf(nodes, nodeCount * 2);
+			nodes[nodeCount] = pos;
+			index.put(pos, nodeCount);
+			return nodeCount++;
+		}
+
+		int nodeCount() {
+			return nodeCount;
+		}
+
+		long pos(int node) {
+			return nodes[node];
+		}
+
+		void edge(int from, int to, int resistance, long capacity) {
+			if (edgeCount == eFrom.length) {
+				int n = edgeCount * 2;
+				eFrom = Arrays.copyOf(eFrom, n);
+				eTo = Arrays.copyOf(eTo, n);
+				eRes = Arrays.copyOf(eRes, n);
+				eCap = Arrays.copyOf(eCap, n);
+			}
+			eFrom[edgeCount] = from;
+			eTo[edgeCount] = to;
+			eRes[edgeCount] = resistance;
+			eCap[edgeCount] = capacity;
+			edgeCount++;
+		}
+
+		void face(int node, long pos, Direction side) {
+			if (faceCount == fNode.length) {
+				int n = faceCount * 2;
+				fNode = Arrays.copyOf(fNode, n);
+				fPos = Arrays.copyOf(fPos, n);
+				fSide = Arrays.copyOf(fSide, n);
+			}
+			fNode[faceCount] = node;
+			fPos[faceCount] = pos;
+			fSide[faceCount] = (byte) side.getId();
+			faceCount++;
+		}
+
+		FECableGraph build() {
+			int n = nodeCount;
+
+			int[] edgeStart = new int[n + 1];
+			for (int i = 0; i < edgeCount; i++) edgeStart[eFrom[i] + 1]++;
+			for (int i = 0; i < n; i++) edgeStart[i + 1] += edgeStart[i];
+			int[] cursor = Arrays.copyOf(edgeStart, n);
+			int[] edgeTo = new int[edgeCount];
+			int[] edgeRes = new int[edgeCount];
+			long[] edgeCap = new long[edgeCount];
+			for (int i = 0; i < edgeCount; i++) {
+				int slot = cursor[eFrom[i]]++;
+				edgeTo[slot] = eTo[i];
+				edgeRes[slot] = eRes[i];
+				edgeCap[slot] = eCap[i];
+			}
+
+			int[] faceStart = new int[n + 1];
+			for (int i = 0; i < faceCount; i++) faceStart[fNode[i] + 1]++;
+			for (int i = 0; i < n; i++) faceStart[i + 1] += faceStart[i];
+			cursor = Arrays.copyOf(faceStart, n);
+			long[] facePos = new long[faceCount];
+			byte[] faceSide = new byte[faceCount];
+			for (int i = 0; i < faceCount; i++) {
+				int slot = cursor[fNode[i]]++;
+				facePos[slot] = fPos[i];
+				faceSide[slot] = fSide[i];
+			}
+
+			return new FECableGraph(Arrays.copyOf(nodes, n), index, edgeStart, edgeTo, edgeRes, edgeCap, faceStart,
+					facePos, faceSide);
+		}
+	}
+}
@@ -2,42 +2,749 @@ package gavinx.fea.network;
 
 import gavinx.fea.api.FECable;
 import gavinx.fea.api.FEApi;
+import gavinx.fea.api.FEBlockEnergy;
+import gavinx.fea.api.FELinkPoint;
+import gavinx.fea.api.FESideMode;
+import gavinx.fea.api.FEStorage;
+import gavinx.fea.api.FETransactions;
 
-import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
 import net.minecraft.util.math.Direction;
 
 /**
  * Per-world cable network cache.
  *
- * <p>Maintains connected components of cable blocks and invalidates locally on block changes.
+ * <p>Maintains connected components of cable blocks and invalidates locally on block changes. Topology and
+ * endpoints come from a {@link CableGraphSource}; managers obtained through {@link FECableNetworks} read their
+ * world.
+ *
+ * <p>Besides cable faces, networks follow registered links between {@link FELinkPoint} ports (wires, ropes,
+ * long-distance relays). A link endpoint is a position exposing both {@link FEApi#LINK_POINT} and
+ * {@link FEApi#CABLE} on the linked side, so sockets act as cable nodes. Links are kept in memory only: the mod
+ * owning them re-registers them after a world load.
+ *
+ * <p>Also parks sources whose distribution moved nothing (see {@link #shouldTick(BlockPos, Direction)}): a parked
+ * source is woken when an endpoint on its network gains space, when the network is rebuilt, or after
+ * {@link #getSleepTimeoutTicks()} ticks, whichever comes first.
+ *
+ * <p>With a {@link #setRebuildBudget(int) rebuild budget}, network discovery runs as resumable jobs from
+ * {@link #tick()} instead of on demand.
  */
 public final class FECableNetworkManager {
+	private final CableGraphSource source;
+	// null when running on a source other than a world
 	private final ServerWorld world;
+	// null unless capability caching is enabled
+	private CachingCableGraphSource capabilities;
 
 	// pos -> networkId
-	private final Long2IntOpenHashMap posToNetwork = new Long2IntOpenHashMap();
+	private final FENetworkIndex posToNetwork = new FENetworkIndex();
 	private final Long2ObjectOpenHashMap<FECableNetwork> networks = new Long2ObjectOpenHashMap<>();
+	// chunk -> ids of networks with cables or endpoints in it
+	private final Long2ObjectOpenHashMap<IntArrayList> chunkToNetworks = new Long2ObjectOpenHashMap<>();
 	private int nextNetworkId = 1;
+	// drop networks with cables in a chunk when it unloads
+	private boolean chunkUnloadRelease;
+	// Bumped whenever a network is built or invalidated.
+	private int topologyEpoch;
+
+	// pos -> links with an end at pos
+	private final Long2ObjectOpenHashMap<ArrayList<FELink>> links = new Long2ObjectOpenHashMap<>();
+
+	// per source side: source pos -> time at which it wakes up
+	private final Long2LongOpenHashMap[] sleepUntil = new Long2LongOpenHashMap[6];
+	private int sleepTimeoutTicks = 20;
+
+	// per side: pos -> FE moved this tick through endpoints with a FEBlockEnergy rate limit
+	private final Long2LongOpenHashMap[] inputThisTick = new Long2LongOpenHashMap[6];
+	private final Long2LongOpenHashMap[] outputThisTick = new Long2LongOpenHashMap[6];
+	private long rateWindow = Long.MIN_VALUE;
+
+	// per side: consumer pos -> smoothed accepted FE per probe, in 1/16 FE
+	private final Long2LongOpenHashMap[] demandEstimate = new Long2LongOpenHashMap[6];
+	private int demandSmoothingShift;
+
+	// FE lost to resistance by all networks of this manager, including rebuilt ones
+	private long lostFE;
+
+	// per source side: source pos -> FE it put into the buffer of its network, not yet delivered
+	private final Long2LongOpenHashMap[] buffered = new Long2LongOpenHashMap[6];
+	private long bufferedFE;
+	private boolean bufferedTransfer;
+
+	// Invalidated networks whose route trees were not yet migrated to their successors, oldest first.
+	private static final int MAX_RETIRED = 8;
+	private final ArrayList<FECableNetwork> retired = new ArrayList<>();
+	private boolean incrementalRouting;
+
+	// null until a mod asks for it
+	private FENetworkScheduler scheduler;
+
+	// Budgeted rebuilds: cable positions to rediscover networks from, the networks invalidated by the changes (still
+	// serving) and those already rediscovered in this batch.
+	private int rebuildBudget;
+	private final LongArrayFIFOQueue rebuildSeeds = new LongArrayFIFOQueue();
+	private final LongOpenHashSet queuedSeeds = new LongOpenHashSet();
+	private final IntOpenHashSet staleNetworks = new IntOpenHashSet();
+	private final IntOpenHashSet rebuiltNetworks = new IntOpenHashSet();
+	private NetworkBuild rebuild;
+	private int rebuildStepsLastTick;
 
 	public FECableNetworkManager(ServerWorld world) {
-		this.world = Objects.requireNonNull(world, "world");
-		posToNetwork.defaultReturnValue(0);
+		this(new WorldCableGraphSource(world));
+	}
+
+	public FECableNetworkManager(CableGraphSource source) {
+		this.source = Objects.requireNonNull(source, "source");
+		this.world = source instanceof WorldCableGraphSource w ? w.getWorld() : null;
+		for (int i = 0; i < 6; i++) {
+			sleepUntil[i] = new Long2LongOpenHashMap();
+			sleepUntil[i].defaultReturnValue(Long.MIN_VALUE);
+			inputThisTick[i] = new Long2LongOpenHashMap();
+			outputThisTick[i] = new Long2LongOpenHashMap();
+			demandEstimate[i] = new Long2LongOpenHashMap();
+			demandEstimate[i].defaultReturnValue(-1L);
+			buffered[i] = new Long2LongOpenHashMap();
+		}
+	}
+
+	public CableGraphSource getSource() {
+		return source;
+	}
+
+	/**
+	 * FE lost over the lifetime of this manager: to resistance in committed transfers, and buffered FE that could
+	 * not be delivered (see {@link #setBufferedTransfer(boolean)}).
+	 */
+	public long getLostFE() {
+		return lostFE;
+	}
+
+	/**
+	 * Where transfers and stats look up endpoints: the source, or its capability cache when
+	 * {@link #setCapabilityCaching(boolean) enabled}.
+	 */
+	CableGraphSource lookup() {
+		return capabilities != null ? capabilities : source;
+	}
+
+	/**
+	 * Cache each endpoint's {@link FEBlockEnergy} (with its side modes) and sided {@link FEStorage}s per position
+	 * instead of resolving them on every transfer. Entries are dropped when the block changes, its chunk (un)loads, or
+	 * {@link #onSideConfigChanged(BlockPos)} is called; blocks whose side modes or exposed storages change without a
+	 * block state change must call the latter. Off by default.
+	 */
+	public void setCapabilityCaching(boolean enabled) {
+		if (enabled == (capabilities != null)) return;
+		capabilities = enabled ? new CachingCableGraphSource(source) : null;
+	}
+
+	public boolean isCapabilityCaching() {
+		return capabilities != null;
+	}
+
+	/**
+	 * The {@link FEBlockEnergy} side modes or the sided storages of the block at {@code pos} changed without a block
+	 * state change (e.g. a machine's IO configuration screen). Drops cached capabilities and the endpoint state of
+	 * the adjacent networks, and wakes their parked sources.
+	 */
+	public void onSideConfigChanged(BlockPos pos) {
+		if (capabilities != null) capabilities.invalidate(pos);
+		long p = pos.asLong();
+		for (Direction dir : Direction.values()) {
+			FECableNetwork net = networks.get(posToNetwork.get(BlockPos.offset(p, dir)));
+			if (net != null) net.dropEndpointCache();
+		}
+	}
+
+	/**
+	 * The tick driver of this manager, created on first use. Once it exists, {@link gavinx.fea.FeaMod} ticks it at
+	 * the end of every world tick; headless callers tick it themselves.
+	 */
+	public FENetworkScheduler getScheduler() {
+		if (scheduler == null) scheduler = new FENetworkScheduler(this);
+		return scheduler;
+	}
+
+	/** The tick driver if one was already created, else null. */
+	public FENetworkScheduler getSchedulerIfPresent() {
+		return scheduler;
+	}
+
+	/** Changes whenever a network is built or invalidated, so callers can tell that cached lookups are stale. */
+	int topologyEpoch() {
+		return topologyEpoch;
+	}
+
+	/** The world this manager reads, or null for a non-world source. */
+	ServerWorld getWorld() {
+		return world;
 	}
 
 	public void markDirty(BlockPos pos) {
+		if (capabilities != null) capabilities.invalidate(pos);
 		long p = pos.asLong();
 		invalidateAt(p);
 		for (Direction dir : Direction.values()) {
 			invalidateAt(BlockPos.offset(p, dir));
 		}
+		// A socket appearing or disappearing also changes the network at the far end of its links.
+		ArrayList<FELink> atPos = links.get(p);
+		if (atPos != null) {
+			for (FELink link : atPos) {
+				invalidateAt(link.other(p));
+			}
+		}
+	}
+
+	/**
+	 * Register a link between two link point ports. Energy may flow along it in each direction whose source port
+	 * can extract and target port can insert; the edge adds both ports' resistance and is limited by both ports'
+	 * {@link FELinkPoint#getTransferLimitFE()}.
+	 *
+	 * <p>A link whose ends are not (yet) valid endpoints is kept but inactive until they are.
+	 *
+	 * @return false if the link already exists or both ends are the same position
+	 */
+	public boolean addLink(BlockPos a, Direction sideA, BlockPos b, Direction sideB) {
+		long pa = a.asLong();
+		long pb = b.asLong();
+		if (pa == pb) return false;
+		if (findLink(pa, sideA, pb, sideB) != null) return false;
+
+		FELink link = new FELink(pa, sideA, pb, sideB);
+		links.computeIfAbsent(pa, p -> new ArrayList<>(1)).add(link);
+		links.computeIfAbsent(pb, p -> new ArrayList<>(1)).add(link);
+		invalidateAt(pa);
+		invalidateAt(pb);
+		return true;
+	}
+
+	/** @return false if no such link was registered */
+	public boolean removeLink(BlockPos a, Direction sideA, BlockPos b, Direction sideB) {
+		long pa = a.asLong();
+		long pb = b.asLong();
+		FELink link = findLink(pa, sideA, pb, sideB);
+		if (link == null) return false;
+		unregister(link);
+		return true;
+	}
+
+	/** Remove every link with an end at {@code pos}, e.g. when a socket is broken. */
+	public void removeLinksAt(BlockPos pos) {
+		ArrayList<FELink> atPos = links.get(pos.asLong());
+		if (atPos == null) return;
+		for (FELink link : atPos.toArray(new FELink[0])) {
+			unregister(link);
+		}
+	}
+
+	public List<FELink> getLinksAt(BlockPos pos) {
+		ArrayList<FELink> atPos = links.get(pos.asLong());
+		return atPos == null ? List.of() : Collections.unmodifiableList(atPos);
+	}
+
+	private FELink findLink(long pa, Direction sideA, long pb, Direction sideB) {
+		ArrayList<FELink> atA = links.get(pa);
+		if (atA == null) return null;
+		for (FELink link : atA) {
+			if (link.connects(pa, sideA, pb, sideB)) return link;
+		}
+		return null;
+	}
+
+	private void unregister(FELink link) {
+		for (long p : new long[] {link.posA, link.posB}) {
+			ArrayList<FELink> atPos = links.get(p);
+			if (atPos == null) continue;
+			atPos.remove(link);
+			if (atPos.isEmpty()) links.remove(p);
+		}
+		invalidateAt(link.posA);
+		invalidateAt(link.posB);
+	}
+
+	/**
+	 * Drop cached endpoint state (storage references, tracked totals) of networks touching a chunk that was
+	 * loaded or unloaded. Topology is unaffected: cables do not change when chunks (un)load.
+	 */
+	public void onChunkChanged(ChunkPos chunkPos) {
+		if (capabilities != null) capabilities.invalidateChunk(chunkPos);
+		IntArrayList ids = chunkToNetworks.get(chunkPos.toLong());
+		if (ids == null) return;
+		for (int i = 0; i < ids.size(); i++) {
+			FECableNetwork net = networks.get(ids.getInt(i));
+			if (net != null) {
+				net.dropEndpointCache();
+			}
+		}
+	}
+
+	/**
+	 * A chunk was unloaded: like {@link #onChunkChanged(ChunkPos)}, and with {@link #setChunkUnloadRelease(boolean)
+	 * unload release} also drops every network with a cable in the chunk along with the chunk's position index.
+	 */
+	public void onChunkUnloaded(ChunkPos chunkPos) {
+		onChunkChanged(chunkPos);
+		if (!chunkUnloadRelease) return;
+		for (int id : posToNetwork.idsIn(chunkPos)) {
+			FECableNetwork net = networks.get(id);
+			if (net == null) continue;
+			staleNetworks.remove(id);
+			rebuiltNetworks.remove(id);
+			drop(net);
+		}
+		// Positions of networks dropped earlier, not yet cleaned up by a lookup.
+		posToNetwork.removeChunk(chunkPos);
+	}
+
+	/**
+	 * Free the networks reaching into a chunk when it unloads, instead of keeping their topology for when it loads
+	 * again. Saves the memory of networks in areas no player is near; the price is that such a network is discovered
+	 * again (loading the chunks it crosses) on its next use from a loaded chunk. Off by default.
+	 */
+	public void setChunkUnloadRelease(boolean enabled) {
+		chunkUnloadRelease = enabled;
+	}
+
+	public boolean isChunkUnloadRelease() {
+		return chunkUnloadRelease;
+	}
+
+	/**
+	 * Whether the source at {@code pos}/{@code side} should run its distribution this tick.
+	 *
+	 * <p>False while the source is parked because its last distribution moved nothing. Cheap enough to call every
+	 * tick; {@link FECableTransfer#distributeFrom} checks it as well.
+	 */
+	public boolean shouldTick(BlockPos pos, Direction side) {
+		Long2LongOpenHashMap sleeping = sleepUntil[side.getId()];
+		if (sleeping.isEmpty()) return true;
+		long p = pos.asLong();
+		long until = sleeping.get(p);
+		if (until == Long.MIN_VALUE) return true;
+		if (source.getTime() < until) return false;
+		sleeping.remove(p);
+		return true;
+	}
+
+	/** Wake a parked source, e.g. after its own configuration changed. */
+	public void wake(BlockPos pos, Direction side) {
+		sleepUntil[side.getId()].remove(pos.asLong());
+	}
+
+	public int getSleepTimeoutTicks() {
+		return sleepTimeoutTicks;
+	}
+
+	/** Maximum number of ticks a parked source sleeps without a wake-up event. 0 disables parking. */
+	public void setSleepTimeoutTicks(int ticks) {
+		this.sleepTimeoutTicks = Math.max(0, ticks);
+	}
+
+	/**
+	 * Enable smoothed demand estimates: each probe of a consumer updates an exponential moving average with weight
+	 * {@code 1 / 2^shift}, and distributions split a short supply across consumers proportionally to their estimates
+	 * before topping up in route order, instead of serving the first consumers in line only. 0 (the default)
+	 * disables it; the maximum shift is 8.
+	 */
+	public void setDemandSmoothing(int shift) {
+		int s = Math.max(0, Math.min(8, shift));
+		if (s == 0) {
+			for (Long2LongOpenHashMap estimates : demandEstimate) {
+				estimates.clear();
+			}
+		}
+		demandSmoothingShift = s;
+	}
+
+	public boolean isDemandSmoothingEnabled() {
+		return demandSmoothingShift > 0;
+	}
+
+	/**
+	 * Keep the shortest-path tree behind every cached route and repair it after a topology change, instead of
+	 * searching the rebuilt network again from every source (see {@link FERouteTree}). A change at the edge of a
+	 * large network then only re-settles the nodes whose paths it affects. Costs about 24 bytes per cable per route
+	 * start. Off by default.
+	 */
+	public void setIncrementalRouting(boolean enabled) {
+		if (!enabled) {
+			for (FECableNetwork network : networks.values()) {
+				network.trees = null;
+			}
+			for (FECableNetwork network : retired) {
+				network.forgetTrees();
+			}
+			retired.clear();
+		}
+		incrementalRouting = enabled;
+	}
+
+	public boolean isIncrementalRouting() {
+		return incrementalRouting;
+	}
+
+	/**
+	 * The route tree from node {@code start} of {@code network}: the kept one if the topology did not change, else
+	 * one migrated from the newest retired network that had a tree for that cable, else a fresh one.
+	 */
+	FERouteTree routeTree(FECableNetwork network, int start) {
+		if (network.trees == null) network.trees = new Int2ObjectOpenHashMap<>();
+		FERouteTree tree = network.trees.get(start);
+		if (tree != null) return tree;
+
+		long startPos = network.graph.nodePos[start];
+		for (int i = retired.size() - 1; i >= 0 && tree == null; i--) {
+			FECableNetwork old = retired.get(i);
+			int oldStart = old.graph.indexOf(startPos);
+			if (oldStart < 0) continue;
+			FERouteTree previous = old.trees.remove(oldStart);
+			if (previous == null) continue;
+			tree = previous.migrate(old.deltaTo(network), network.graph, start);
+			if (old.trees.isEmpty()) {
+				retired.remove(i);
+				old.forgetTrees();
+			}
+		}
+		if (tree == null) tree = FERouteTree.build(network.graph, start);
+		network.trees.put(start, tree);
+		return tree;
+	}
+
+	private void retire(FECableNetwork network) {
+		if (network.trees == null || network.trees.isEmpty()) return;
+		retired.add(network);
+		if (retired.size() > MAX_RETIRED) retired.remove(0).forgetTrees();
+	}
+
+	/**
+	 * Limit topology work to {@code steps} cable expansions per {@link #tick()}. Networks are then (re)discovered by
+	 * resumable jobs spread over ticks instead of on demand: until the jobs for a topology change finish, the
+	 * networks it invalidated keep serving transfers with their old routes (endpoint changes are still picked up
+	 * immediately), and cables not yet part of a network have none. 0 (the default) rebuilds synchronously.
+	 */
+	public void setRebuildBudget(int steps) {
+		int budget = Math.max(0, steps);
+		if (budget == 0 && rebuildBudget > 0) {
+			// Drop pending work; networks are found on demand again.
+			rebuild = null;
+			rebuildSeeds.clear();
+			queuedSeeds.clear();
+			rebuiltNetworks.clear();
+			rebuildBudget = 0;
+			int[] stale = staleNetworks.toIntArray();
+			staleNetworks.clear();
+			for (int id : stale) {
+				FECableNetwork net = networks.get(id);
+				if (net != null) drop(net);
+			}
+		}
+		rebuildBudget = budget;
+	}
+
+	public int getRebuildBudget() {
+		return rebuildBudget;
+	}
+
+	/** Pending rebuild jobs: seed positions waiting plus the running job. */
+	public int getRebuildQueueDepth() {
+		return rebuildSeeds.size() + (rebuild != null ? 1 : 0);
+	}
+
+	/** Networks invalidated by topology changes that still serve transfers until their rebuild finishes. */
+	public int getStaleNetworkCount() {
+		return staleNetworks.size();
+	}
+
+	/** Cable expansions spent on rebuilds in the last {@link #tick()}. */
+	public int getRebuildStepsLastTick() {
+		return rebuildStepsLastTick;
+	}
+
+	/**
+	 * Run budgeted rebuild jobs and drain network buffers. Called at the end of each world tick; headless callers tick
+	 * it themselves.
+	 */
+	public void tick() {
+		runRebuilds();
+		if (bufferedFE > 0) FECableTransfer.drainBuffers(this);
+	}
+
+	private void runRebuilds() {
+		rebuildStepsLastTick = 0;
+		if (rebuildBudget <= 0) return;
+		int steps = rebuildBudget;
+		while (steps > 0) {
+			if (rebuild == null) {
+				if (rebuildSeeds.isEmpty()) {
+					finishRebuilds();
+					break;
+				}
+				long seed = rebuildSeeds.dequeueLong();
+				queuedSeeds.remove(seed);
+				steps--;
+				if (rebuiltNetworks.contains(posToNetwork.get(seed)) || !isCableAnySide(seed)) continue;
+				rebuild = new NetworkBuild(seed);
+			}
+			steps -= advance(rebuild, steps, true);
+			if (rebuild.network != null) {
+				rebuiltNetworks.add(rebuild.network.id);
+				rebuild = null;
+			}
+		}
+		rebuildStepsLastTick = rebuildBudget - Math.max(0, steps);
+	}
+
+	/** Every seed was rediscovered: retire the stale networks and the positions only they still claimed. */
+	private void finishRebuilds() {
+		if (staleNetworks.isEmpty()) return;
+		int[] stale = staleNetworks.toIntArray();
+		staleNetworks.clear();
+		rebuiltNetworks.clear();
+		for (int id : stale) {
+			FECableNetwork net = networks.get(id);
+			if (net != null) drop(net);
+		}
+	}
+
+	private void queueSeed(long pos) {
+		if (queuedSeeds.add(pos)) rebuildSeeds.enqueue(pos);
+	}
+
+	/**
+	 * Buffered transfer: {@link FECableTransfer#distributeFrom} only moves FE from the source into a buffer of the
+	 * source's network, as much as the network has room for (see {@link FECableNetwork#getBufferCapacityFE()}), and
+	 * {@link #tick()} drains each network's buffer into its consumers once, with the same routes, loss and limits as a
+	 * direct distribution from each source. A generator's cost then no longer depends on the network behind it.
+	 * Buffered FE is kept per source face and is lost when the cable next to it is removed. Turning the mode off
+	 * stops buffering; what is in transit still drains. Off by default.
+	 */
+	public void setBufferedTransfer(boolean enabled) {
+		bufferedTransfer = enabled;
+	}
+
+	public boolean isBufferedTransfer() {
+		return bufferedTransfer;
+	}
+
+	/** FE in transit in the buffers of all networks of this manager. */
+	public long getBufferedFE() {
+		return bufferedFE;
+	}
+
+	/** Buffered FE per source position, for sources on {@code side}. */
+	Long2LongOpenHashMap buffered(Direction side) {
+		return buffered[side.getId()];
+	}
+
+	void addBuffered(FECableNetwork network, long pos, Direction side, long amount) {
+		if (amount <= 0) return;
+		// Counted before the entry exists, so a first count does not include it.
+		network.bufferedFE = network.getBufferedFE() + amount;
+		buffered[side.getId()].addTo(pos, amount);
+		bufferedFE += amount;
+	}
+
+	/** Take delivered (or lost) FE out of the buffer entry of a source; {@code network} may be null. */
+	void takeBuffered(FECableNetwork network, long pos, Direction side, long amount) {
+		if (amount <= 0) return;
+		Long2LongOpenHashMap entries = buffered[side.getId()];
+		long left = entries.get(pos) - amount;
+		if (left > 0) {
+			entries.put(pos, left);
+		} else {
+			entries.remove(pos);
+		}
+		if (network != null && network.bufferedFE >= 0) network.bufferedFE -= amount;
+		bufferedFE -= amount;
+	}
+
+	/** Take FE that can no longer be delivered out of the buffer entry of a source and count it as lost. */
+	void loseBuffered(long pos, Direction side, long amount) {
+		if (amount <= 0) return;
+		// The network the entry was counted in, if it is still indexed.
+		FECableNetwork network = networks.get(posToNetwork.get(BlockPos.offset(pos, side)));
+		takeBuffered(network, pos, side, amount);
+		if (network != null) network.lostFE += amount;
+		lostFE += amount;
+	}
+
+	/**
+	 * Return the buffered FE of every source to the source's storage. Buffers are not saved with the world, so this
+	 * runs when the server stops; what a source cannot take back (it is full, gone or does not accept insertion) is
+	 * lost and counted in {@link #getLostFE()}.
+	 *
+	 * @return FE lost
+	 */
+	public long flushBuffers() {
+		long lost = 0;
+		for (Direction side : Direction.values()) {
+			Long2LongOpenHashMap entries = buffered[side.getId()];
+			if (entries.isEmpty()) continue;
+			for (long p : entries.keySet().toLongArray()) {
+				long amount = entries.get(p);
+				FEStorage source = lookup().findStorage(BlockPos.fromLong(p), side);
+				long returned = source == null ? 0 : FETransactions.insert(source, amount, false);
+				takeBuffered(networks.get(posToNetwork.get(BlockPos.offset(p, side))), p, side, returned);
+				loseBuffered(p, side, amount - returned);
+				lost += amount - returned;
+			}
+		}
+		return lost;
+	}
+
+	/**
+	 * Prepare the route searches that the next {@link #tick()} and scheduler tick will need and that are not cached
+	 * yet: one per buffered source and registered scheduler side, see {@link FEParallelRouting}. May discover
+	 * networks, as those ticks would. None with incremental routing.
+	 */
+	void collectRouteSearches(ArrayList<FECableTransfer.RouteSearch> out) {
+		if (incrementalRouting) return;
+		LongOpenHashSet seen = new LongOpenHashSet();
+		for (Direction dir : Direction.values()) {
+			Long2LongOpenHashMap entries = buffered[dir.getId()];
+			if (entries.isEmpty()) continue;
+			for (long p : entries.keySet().toLongArray()) {
+				addRouteSearch(BlockPos.offset(p, dir), false, seen, out);
+			}
+		}
+		if (scheduler != null) scheduler.collectRouteSearches(seen, out);
+	}
+
+	/** Add the search for routes from ({@code pull}: into) the cable at {@code cable} unless cached or seen. */
+	void addRouteSearch(long cable, boolean pull, LongOpenHashSet seen, ArrayList<FECableTransfer.RouteSearch> out) {
+		FECableNetwork network = getNetworkContaining(BlockPos.fromLong(cable));
+		if (network == null) return;
+		int start = network.graph.indexOf(cable);
+		if (start < 0) return;
+		if ((pull ? network.pullRoutes : network.baseRoutes).containsKey(start)) return;
+		if (!seen.add((long) network.id << 32 | (long) start << 1 | (pull ? 1 : 0))) return;
+		out.add(FECableTransfer.RouteSearch.prepare(network, start, pull));
+	}
+
+	/** Sum of the buffer entries of sources next to a cable of {@code network}. */
+	private long bufferedIn(FECableNetwork network) {
+		long sum = 0;
+		for (Direction dir : Direction.values()) {
+			Long2LongOpenHashMap entries = buffered[dir.getId()];
+			if (entries.isEmpty()) continue;
+			for (long p : entries.keySet().toLongArray()) {
+				if (network.cables.contains(BlockPos.offset(p, dir))) sum += entries.get(p);
+			}
+		}
+		return sum;
+	}
+
+	/** Smoothed FE a consumer accepted per probe, or 0 without an estimate. */
+	public long getDemandEstimate(BlockPos pos, Direction side) {
+		return Math.max(0L, demandEstimate(pos.asLong(), side));
+	}
+
+	/** Smoothed FE a consumer accepted per probe, or -1 if it was never probed. */
+	long demandEstimate(long pos, Direction side) {
+		long estimate = demandEstimate[side.getId()].get(pos);
+		return estimate < 0 ? -1L : estimate >> 4;
+	}
+
+	/**
+	 * Fold one probe into the estimate of {@code pos}/{@code side}. A probe the consumer accepted in full only shows
+	 * a lower bound of its demand, so it never lowers the estimate.
+	 */
+	void sampleDemand(long pos, Direction side, long accepted, boolean saturated) {
+		if (demandSmoothingShift == 0) return;
+		Long2LongOpenHashMap estimates = demandEstimate[side.getId()];
+		long sample = accepted >= Long.MAX_VALUE >> 4 ? Long.MAX_VALUE >> 4 : accepted << 4;
+		long current = estimates.get(pos);
+		if (current < 0) {
+			// First observation seeds the average instead of being damped towards 0.
+			estimates.put(pos, sample);
+			return;
+		}
+		if (saturated && sample <= current) return;
+		estimates.put(pos, current + ((sample - current) >> demandSmoothingShift));
+	}
+
+	/** FE the endpoint may still take this tick under {@code rate} (see {@link FEBlockEnergy#getMaxInputRateFE}). */
+	long remainingInput(long pos, Direction side, long rate) {
+		return remaining(inputThisTick, pos, side, rate);
+	}
+
+	long remainingOutput(long pos, Direction side, long rate) {
+		return remaining(outputThisTick, pos, side, rate);
+	}
+
+	void addInput(long pos, Direction side, long amount) {
+		add(inputThisTick, pos, side, amount);
+	}
+
+	void addOutput(long pos, Direction side, long amount) {
+		add(outputThisTick, pos, side, amount);
+	}
+
+	private long remaining(Long2LongOpenHashMap[] used, long pos, Direction side, long rate) {
+		if (rate == Long.MAX_VALUE) return Long.MAX_VALUE;
+		if (rate <= 0) return 0;
+		rollRateWindow();
+		return Math.max(0L, rate - used[side.getId()].get(pos));
+	}
+
+	private void add(Long2LongOpenHashMap[] used, long pos, Direction side, long amount) {
+		if (amount <= 0) return;
+		rollRateWindow();
+		used[side.getId()].addTo(pos, amount);
+	}
+
+	private void rollRateWindow() {
+		long now = source.getTime();
+		if (now == rateWindow) return;
+		rateWindow = now;
+		for (int i = 0; i < 6; i++) {
+			inputThisTick[i].clear();
+			outputThisTick[i].clear();
+		}
+	}
+
+	/**
+	 * Park a source on {@code network} until it gains space, is rebuilt, or the timeout expires.
+	 *
+	 * <p>Starts tracking the network's endpoint totals so that space gains are noticed.
+	 */
+	void park(FECableNetwork network, BlockPos pos, Direction side) {
+		if (sleepTimeoutTicks <= 0 || !network.isValid()) return;
+		FECableNetworkStats.totals(network);
+		long p = pos.asLong();
+		sleepUntil[side.getId()].put(p, source.getTime() + sleepTimeoutTicks);
+		network.addSleeper(p, side.getId());
+	}
+
+	private void wakeAll(FECableNetwork network) {
+		LongOpenHashSet[] sleepers = network.sleepers;
+		if (sleepers == null) return;
+		network.sleepers = null;
+		for (int i = 0; i < 6; i++) {
+			if (sleepers[i] == null) continue;
+			for (long p : sleepers[i]) {
+				sleepUntil[i].remove(p);
+			}
+		}
 	}
 
 	public FECableNetwork getNetworkContaining(BlockPos cablePos) {
@@ -51,73 +758,469 @@ public final class FECableNetworkManager {
 			posToNetwork.remove(start);
 		}
 
-		FECableNetwork built = buildNetworkFrom(start);
-		if (built == null) return null;
-		return built;
+		if (rebuildBudget > 0) {
+			if (rebuild == null || !rebuild.cables.contains(start)) queueSeed(start);
+			return null;
+		}
+		NetworkBuild build = new NetworkBuild(start);
+		advance(build, Integer.MAX_VALUE, false);
+		return build.network;
+	}
+
+	/** Expand up to {@code steps} nodes of {@code build} and install its network once done; returns nodes expanded. */
+	private int advance(NetworkBuild build, int steps, boolean budgeted) {
+		FEEvents.Build event = new FEEvents.Build();
+		event.begin();
+		int expanded = build.run(steps);
+		if (build.isDone()) install(build);
+		event.end();
+		if (event.shouldCommit()) {
+			event.networkId = build.network == null ? 0 : build.network.id;
+			event.startPos = build.start;
+			event.nodesExpanded = expanded;
+			event.cables = build.cables.size();
+			event.budgeted = budgeted;
+			event.commit();
+		}
+		return expanded;
 	}
 
 	private void invalidateAt(long pos) {
+		if (rebuildBudget > 0) {
+			deferInvalidation(pos);
+			return;
+		}
 		int id = posToNetwork.get(pos);
 		if (id == 0) return;
-		FECableNetwork net = networks.remove(id);
-		if (net == null) return;
+		FECableNetwork net = networks.get(id);
+		if (net != null) drop(net);
+	}
+
+	/**
+	 * Budgeted counterpart of {@link #invalidateAt}: the network at {@code pos} keeps serving with fresh endpoint
+	 * state until a rebuild from {@code pos} replaced it. A running job that already saw {@code pos} starts over.
+	 */
+	private void deferInvalidation(long pos) {
+		int id = posToNetwork.get(pos);
+		FECableNetwork net = id == 0 ? null : networks.get(id);
+		if (net != null) {
+			if (staleNetworks.add(id)) {
+				FEEvents.Invalidate event = new FEEvents.Invalidate();
+				if (event.shouldCommit()) {
+					event.networkId = id;
+					event.cables = net.cables.size();
+					event.deferred = true;
+					event.commit();
+				}
+			}
+			rebuiltNetworks.remove(id);
+			net.dropEndpointCache();
+			// Every part of a changed network is next to a change, so seeding the changed positions covers it.
+			queueSeed(pos);
+		}
+		if (rebuild != null && rebuild.cables.contains(pos)) {
+			queueSeed(rebuild.start);
+			rebuild = null;
+		}
+	}
+
+	private void drop(FECableNetwork net) {
+		FEEvents.Invalidate event = new FEEvents.Invalidate();
+		event.begin();
+		networks.remove(net.id);
 		for (long cable : net.cables) {
-			posToNetwork.remove(cable);
+			// Rebuilt networks may already have claimed the position.
+			posToNetwork.remove(cable, net.id);
+		}
+		for (long chunk : net.chunks) {
+			IntArrayList ids = chunkToNetworks.get(chunk);
+			if (ids == null) continue;
+			for (int i = ids.size() - 1; i >= 0; i--) {
+				if (ids.getInt(i) == net.id) ids.removeInt(i);
+			}
+			if (ids.isEmpty()) chunkToNetworks.remove(chunk);
+		}
+		topologyEpoch++;
+		net.invalidate();
+		if (incrementalRouting) retire(net);
+		event.end();
+		if (event.shouldCommit()) {
+			event.networkId = net.id;
+			event.cables = net.cables.size();
+			event.commit();
 		}
 	}
 
 	private boolean isCableAnySide(long pos) {
 		BlockPos bp = BlockPos.fromLong(pos);
 		for (Direction dir : Direction.values()) {
-			FECable cable = FEApi.CABLE.find(world, bp, dir);
+			FECable cable = source.findCable(bp, dir);
 			if (cable != null) return true;
 		}
 		return false;
 	}
 
-	private FECableNetwork buildNetworkFrom(long startPos) {
-		if (!isCableAnySide(startPos)) return null;
+	/** The port at {@code pos}/{@code side} if it can terminate a link: a link point over a cable face. */
+	private FELinkPoint findLinkPort(BlockPos pos, Direction side) {
+		FELinkPoint port = source.findLinkPoint(pos, side);
+		if (port == null || port.getMode() == FESideMode.NONE) return null;
+		if (source.findCable(pos, side) == null) return null;
+		return port;
+	}
 
-		int networkId = nextNetworkId++;
-		LongOpenHashSet cables = new LongOpenHashSet();
-		ArrayDeque<Long> queue = new ArrayDeque<>();
+	/**
+	 * Breadth-first discovery of the network containing a start cable. Resumable, so budgeted rebuilds can spread it
+	 * over ticks; nodes are appended in discovery order, so the graph builder doubles as the queue.
+	 */
+	private final class NetworkBuild {
+		final long start;
+		final LongOpenHashSet cables = new LongOpenHashSet();
+		final FECableGraph.Builder graph = new FECableGraph.Builder();
+		private int next;
+		// set once installed
+		FECableNetwork network;
+
+		NetworkBuild(long start) {
+			this.start = start;
+			cables.add(start);
+			graph.node(start);
+		}
 
-		cables.add(startPos);
-		queue.add(startPos);
+		boolean isDone() {
+			return next >= graph.nodeCount();
+		}
+
+		/** Expand up to {@code steps} nodes; returns how many were expanded. */
+		int run(int steps) {
+			int done = 0;
+			while (done < steps && next < graph.nodeCount()) {
+				expand(next++);
+				done++;
+			}
+			return done;
+		}
 
-		while (!queue.isEmpty()) {
-			long p = queue.removeFirst();
+		private void expand(int i) {
+			long p = graph.pos(i);
 			BlockPos bp = BlockPos.fromLong(p);
 
 			for (Direction dir : Direction.values()) {
-				long neighbor = BlockPos.offset(p, dir);
-				if (cables.contains(neighbor)) continue;
-
 				// Connection requires both sides to expose a cable.
-				if (FEApi.CABLE.find(world, bp, dir) == null) continue;
-				BlockPos nbp = BlockPos.fromLong(neighbor);
-				if (FEApi.CABLE.find(world, nbp, dir.getOpposite()) == null) continue;
+				if (source.findCable(bp, dir) == null) continue;
+				long neighbor = BlockPos.offset(p, dir);
+				Direction enterSide = dir.getOpposite();
+				FECable next = source.findCable(BlockPos.fromLong(neighbor), enterSide);
+				if (next == null) {
+					// Not a cable face: a potential endpoint.
+					graph.face(i, neighbor, enterSide);
+					continue;
+				}
 
 				cables.add(neighbor);
-				queue.add(neighbor);
+				graph.edge(i, graph.node(neighbor), FELoss.clampPpm(next.getResistancePpm()),
+						Math.max(0L, next.getTransferCapacityFE()));
 			}
+
+			addLinkEdges(graph, cables, i, p, bp);
 		}
+	}
+
+	/** Register the network found by a finished build, taking over its positions. */
+	private FECableNetwork install(NetworkBuild build) {
+		int networkId = nextNetworkId++;
+		LongOpenHashSet cables = build.cables;
 
-		FECableNetwork network = new FECableNetwork(networkId, cables);
+		LongOpenHashSet chunks = new LongOpenHashSet();
+		for (long p : cables) {
+			// Endpoints sit next to cables, so include the horizontal neighbours' chunks as well.
+			int x = BlockPos.unpackLongX(p);
+			int z = BlockPos.unpackLongZ(p);
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dz = -1; dz <= 1; dz++) {
+					if (dx != 0 && dz != 0) continue;
+					chunks.add(ChunkPos.toLong(ChunkSectionPos.getSectionCoord(x + dx), ChunkSectionPos.getSectionCoord(z + dz)));
+				}
+			}
+		}
+
+		FECableNetwork network = new FECableNetwork(this, networkId, cables, chunks, build.graph.build());
+		build.network = network;
 		networks.put(networkId, network);
+		topologyEpoch++;
 		for (long p : cables) {
 			posToNetwork.put(p, networkId);
 		}
+		for (long chunk : chunks) {
+			chunkToNetworks.computeIfAbsent(chunk, c -> new IntArrayList()).add(networkId);
+		}
 		return network;
 	}
 
+	private void addLinkEdges(FECableGraph.Builder graph, LongOpenHashSet cables, int from, long p, BlockPos bp) {
+		ArrayList<FELink> atPos = links.get(p);
+		if (atPos == null) return;
+
+		for (FELink link : atPos) {
+			long q = link.other(p);
+			Direction fromSide = link.sideAt(p);
+			Direction toSide = link.sideAt(q);
+
+			FELinkPoint fromPort = findLinkPort(bp, fromSide);
+			if (fromPort == null) continue;
+			BlockPos qp = BlockPos.fromLong(q);
+			FELinkPoint toPort = findLinkPort(qp, toSide);
+			if (toPort == null) continue;
+
+			boolean forward = fromPort.getMode().canExtract() && toPort.getMode().canInsert();
+			boolean backward = toPort.getMode().canExtract() && fromPort.getMode().canInsert();
+			if (!forward && !backward) continue;
+
+			cables.add(q);
+			int to = graph.node(q);
+			if (!forward) continue;
+
+			// The reverse edge is added when the far end is expanded.
+			FECable enter = source.findCable(qp, toSide);
+			long r = (long) FELoss.clampPpm(fromPort.getResistancePpm()) + FELoss.clampPpm(toPort.getResistancePpm())
+					+ FELoss.clampPpm(enter.getResistancePpm());
+			long c = Math.min(Math.max(0L, enter.getTransferCapacityFE()),
+					Math.min(Math.max(0L, fromPort.getTransferLimitFE()), Math.max(0L, toPort.getTransferLimitFE())));
+			graph.edge(from, to, FELoss.clampPpm(r), c);
+		}
+	}
+
+	/** A registered link between two ports. Unordered: {@code (a, b)} and {@code (b, a)} are the same link. */
+	public static final class FELink {
+		public final long posA;
+		public final Direction sideA;
+		public final long posB;
+		public final Direction sideB;
+
+		private FELink(long posA, Direction sideA, long posB, Direction sideB) {
+			this.posA = posA;
+			this.sideA = sideA;
+			this.posB = posB;
+			this.sideB = sideB;
+		}
+
+		long other(long pos) {
+			return pos == posA ? posB : posA;
+		}
+
+		Direction sideAt(long pos) {
+			return pos == posA ? sideA : sideB;
+		}
+
+		boolean connects(long pa, Direction sa, long pb, Direction sb) {
+			return (posA == pa && sideA == sa && posB == pb && sideB == sb)
+					|| (posA == pb && sideA == sb && posB == pa && sideB == sa);
+		}
+	}
+
 	public static final class FECableNetwork {
+		private final FECableNetworkManager manager;
 		public final int id;
 		public final LongOpenHashSet cables;
+		/** Chunks containing this network's cables or their neighbours. */
+		public final LongOpenHashSet chunks;
+		final FECableGraph graph;
+
+		// Lazily built by FECableNetworkStats / FECableTransfer; dropped with the network or when a touching chunk
+		// (un)loads, since both refer to which endpoint faces currently expose storage.
+		FECableNetworkStats.Totals totals;
+		final Long2ObjectOpenHashMap<FECableTransfer.Route> routes = new Long2ObjectOpenHashMap<>();
+		// Start node -> route relative to that node, shared by every entry face into it.
+		final Int2ObjectOpenHashMap<FECableTransfer.Route> baseRoutes = new Int2ObjectOpenHashMap<>();
+		// Start node -> sources reachable for a pull into that node, see FECableTransfer.pullInto.
+		final Int2ObjectOpenHashMap<FECableTransfer.Route> pullRoutes = new Int2ObjectOpenHashMap<>();
+		// The graph without its endpoint-free linear runs, for route searches.
+		private FEContractedGraph contracted;
+		// Endpoint faces already looked up, and those that accepted / gave FE.
+		private BitSet checkedFaces;
+		private BitSet acceptingFaces;
+		private BitSet extractingFaces;
+		private ArrayList<FECableNetworkStats.NetworkListener> subscribers;
+		// per side: parked source positions
+		private LongOpenHashSet[] sleepers;
+		private boolean valid = true;
+		// Route trees by start node, only with incremental routing. Unlike routes they survive chunk (un)loads, as
+		// they do not depend on which endpoints expose storage.
+		Int2ObjectOpenHashMap<FERouteTree> trees;
+		// Delta from this (retired) network's graph to the network its trees are being migrated to.
+		private FECableNetwork deltaTarget;
+		private FERouteTree.Delta delta;
+		// Millionths of an FE not yet delivered, carried into the next transfer on this network.
+		long lossCarry;
+		private long lostFE;
+		// Buffered transfer; -1 until first needed.
+		private long bufferCapacity = -1;
+		long bufferedFE = -1;
 
-		private FECableNetwork(int id, LongOpenHashSet cables) {
+		private FECableNetwork(FECableNetworkManager manager, int id, LongOpenHashSet cables, LongOpenHashSet chunks,
+				FECableGraph graph) {
+			this.manager = manager;
 			this.id = id;
 			this.cables = cables;
+			this.chunks = chunks;
+			this.graph = graph;
+		}
+
+		/** False once the network was invalidated by a topology change; a rebuilt network gets a new id. */
+		public boolean isValid() {
+			return valid;
+		}
+
+		FECableNetworkManager getManager() {
+			return manager;
+		}
+
+		/** FE lost to resistance in committed transfers on this network: extracted from sources minus delivered. */
+		public long getLostFE() {
+			return lostFE;
+		}
+
+		/**
+		 * FE this network holds in transit with {@link FECableNetworkManager#setBufferedTransfer(boolean) buffered
+		 * transfer}: one {@link FECable#getTransferCapacityFE() transfer capacity} per cable, summed.
+		 */
+		public long getBufferCapacityFE() {
+			if (bufferCapacity < 0) {
+				int[] inStart = graph.inStart();
+				int[] inEdges = graph.inEdges();
+				long sum = 0;
+				for (int v = 0; v < graph.nodeCount(); v++) {
+					// Every edge into a cable carries that cable's capacity.
+					long cap = 0;
+					for (int i = inStart[v]; i < inStart[v + 1]; i++) {
+						cap = Math.max(cap, graph.edgeCap[inEdges[i]]);
+					}
+					sum = sum > Long.MAX_VALUE - cap ? Long.MAX_VALUE : sum + cap;
+				}
+				bufferCapacity = sum;
+			}
+			return bufferCapacity;
+		}
+
+		/** FE in transit in this network's buffer, see {@link #getBufferCapacityFE()}. */
+		public long getBufferedFE() {
+			if (bufferedFE < 0) bufferedFE = manager.bufferedIn(this);
+			return bufferedFE;
+		}
+
+		private FERouteTree.Delta deltaTo(FECableNetwork successor) {
+			if (deltaTarget != successor) {
+				delta = FERouteTree.delta(graph, successor.graph);
+				deltaTarget = successor;
+			}
+			return delta;
+		}
+
+		private void forgetTrees() {
+			trees = null;
+			deltaTarget = null;
+			delta = null;
+		}
+
+		void addLoss(long lost, long carry) {
+			lostFE += lost;
+			manager.lostFE += lost;
+			lossCarry = carry;
+		}
+
+		boolean addSubscriber(FECableNetworkStats.NetworkListener listener) {
+			if (!valid) return false;
+			if (subscribers == null) subscribers = new ArrayList<>(2);
+			if (!subscribers.contains(listener)) subscribers.add(listener);
+			return true;
+		}
+
+		void removeSubscriber(FECableNetworkStats.NetworkListener listener) {
+			if (subscribers != null) subscribers.remove(listener);
+		}
+
+		private void addSleeper(long pos, int side) {
+			if (sleepers == null) sleepers = new LongOpenHashSet[6];
+			if (sleepers[side] == null) sleepers[side] = new LongOpenHashSet();
+			sleepers[side].add(pos);
+		}
+
+		/** Called by the tracked totals when an endpoint's insertable space grew. */
+		void onSpaceGained() {
+			if (sleepers != null) {
+				manager.wakeAll(this);
+			}
+		}
+
+		void fireFullChanged(boolean full) {
+			if (subscribers == null) return;
+			for (FECableNetworkStats.NetworkListener l : subscribers.toArray(new FECableNetworkStats.NetworkListener[0])) {
+				l.onFullChanged(full);
+			}
+		}
+
+		/** The graph with linear runs between endpoints contracted, built once per endpoint cache. */
+		FEContractedGraph contracted() {
+			if (contracted == null) {
+				contracted = FEContractedGraph.contract(graph, f -> acceptsFace(f) || extractsFace(f));
+			}
+			return contracted;
+		}
+
+		/** Whether endpoint face {@code face} of the graph accepts FE, looked up once per network. */
+		boolean acceptsFace(int face) {
+			checkFace(face);
+			return acceptingFaces.get(face);
+		}
+
+		/** Whether endpoint face {@code face} of the graph gives FE, looked up once per network. */
+		boolean extractsFace(int face) {
+			checkFace(face);
+			return extractingFaces.get(face);
+		}
+
+		private void checkFace(int face) {
+			if (checkedFaces == null) {
+				checkedFaces = new BitSet(graph.faceCount());
+				acceptingFaces = new BitSet(graph.faceCount());
+				extractingFaces = new BitSet(graph.faceCount());
+			}
+			if (checkedFaces.get(face)) return;
+			checkedFaces.set(face);
+			FEStorage storage = manager.lookup().findStorage(BlockPos.fromLong(graph.facePos[face]),
+					graph.faceSide(face));
+			if (storage == null) return;
+			if (storage.supportsInsertion()) acceptingFaces.set(face);
+			if (storage.supportsExtraction()) extractingFaces.set(face);
+		}
+
+		private void dropEndpointCache() {
+			baseRoutes.clear();
+			pullRoutes.clear();
+			contracted = null;
+			checkedFaces = null;
+			acceptingFaces = null;
+			extractingFaces = null;
+			if (!routes.isEmpty()) {
+				routes.clear();
+				FETraceRecorder.onRoutesDropped(manager.world, id);
+			}
+			if (totals != null) {
+				totals.release();
+				totals = null;
+			}
+			// Nothing notifies space gains anymore; let parked sources re-check.
+			manager.wakeAll(this);
+		}
+
+		private void invalidate() {
+			valid = false;
+			dropEndpointCache();
+			if (subscribers == null) return;
+			FECableNetworkStats.NetworkListener[] notify = subscribers.toArray(new FECableNetworkStats.NetworkListener[0]);
+			subscribers = null;
+			for (FECableNetworkStats.NetworkListener l : notify) {
+				l.onNetworkInvalidated();
+			}
 		}
 	}
 }
@@ -1,10 +1,13 @@
 package gavinx.fea.network;
 
-import gavinx.fea.api.FEApi;
 import gavinx.fea.api.FEBlockEnergy;
 import gavinx.fea.api.FEStorage;
+import gavinx.fea.api.FEStorageListener;
 
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import java.util.ArrayList;
 
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
@@ -15,6 +18,13 @@ import net.minecraft.util.math.Direction;
  *
  * <p>Intended for use-cases like generators that should stop producing when the connected network
  * has no remaining insertable space.
+ *
+ * <p>Endpoints are scanned once per network and kept until the network is rebuilt or a chunk it touches
+ * (un)loads. Storages that support {@link FEStorage#addListener listeners} report each committed change through
+ * {@link FEStorageListener}, which updates the totals incrementally; others are polled on each query. Sided IO of
+ * {@link FEBlockEnergy} is captured at scan time, so a block that changes its side modes or exposed storages
+ * without a block update should call {@link FECableNetworkManager#onSideConfigChanged(BlockPos)}: only the adjacent
+ * networks drop their endpoint scan, and rescan on their next query.
  */
 public final class FECableNetworkStats {
 	private FECableNetworkStats() {}
@@ -31,6 +41,19 @@ public final class FECableNetworkStats {
 		}
 	}
 
+	/**
+	 * Notified when a network's insertable space flips between full and not full.
+	 *
+	 * <p>Changes of listener-capable storages are reported as they commit; changes of polled storages are only
+	 * noticed by the next stats query on the network.
+	 */
+	public interface NetworkListener {
+		void onFullChanged(boolean full);
+
+		/** The network was rebuilt or removed; subscribe again to follow its replacement. */
+		default void onNetworkInvalidated() {}
+	}
+
 	private static final Stats EMPTY = new Stats(0L, 0L);
 
 	/**
@@ -38,11 +61,12 @@ public final class FECableNetworkStats {
 	 *
 	 * <p>Counts storages adjacent to cables where the storage exists for the cable-facing side and
 	 * insertion is allowed (supportsInsertion + optional {@link FEBlockEnergy} sided rules).
+	 * Storages sharing a {@link FEStorage#getBackingStorage() backing storage} are counted once.
 	 */
 	public static Stats getInsertableTotals(ServerWorld world, BlockPos anyCablePos) {
 		FECableNetworkManager.FECableNetwork network = FECableNetworks.get(world).getNetworkContaining(anyCablePos);
 		if (network == null) return EMPTY;
-		return getInsertableTotals(world, network);
+		return totals(network).read();
 	}
 
 	/**
@@ -56,47 +80,76 @@ public final class FECableNetworkStats {
 		return getInsertableTotals(world, startCablePos);
 	}
 
-	private static Stats getInsertableTotals(ServerWorld world, FECableNetworkManager.FECableNetwork network) {
-		LongOpenHashSet[] seenBySide = new LongOpenHashSet[6];
-		for (int i = 0; i < 6; i++) {
-			seenBySide[i] = new LongOpenHashSet();
-		}
-
-		long totalAmount = 0L;
-		long totalCapacity = 0L;
+	/**
+	 * Subscribe to full / has-space transitions of the network containing {@code anyCablePos}.
+	 *
+	 * <p>The subscription lasts for the lifetime of that network; see {@link NetworkListener#onNetworkInvalidated()}.
+	 *
+	 * @return false if there is no network at the position
+	 */
+	public static boolean subscribe(ServerWorld world, BlockPos anyCablePos, NetworkListener listener) {
+		FECableNetworkManager.FECableNetwork network = FECableNetworks.get(world).getNetworkContaining(anyCablePos);
+		if (network == null) return false;
+		totals(network);
+		return network.addSubscriber(listener);
+	}
 
-		for (long cableLong : network.cables) {
-			BlockPos cablePos = BlockPos.fromLong(cableLong);
+	public static void unsubscribe(ServerWorld world, BlockPos anyCablePos, NetworkListener listener) {
+		FECableNetworkManager.FECableNetwork network = FECableNetworks.get(world).getNetworkContaining(anyCablePos);
+		if (network != null) {
+			network.removeSubscriber(listener);
+		}
+	}
 
-			for (Direction dir : Direction.values()) {
-				BlockPos neighborPos = cablePos.offset(dir);
-				Direction neighborSide = dir.getOpposite();
-				int sideId = neighborSide.getId();
+	/** Insertable totals of a network of any manager, including ones not backed by a world. */
+	public static Stats getInsertableTotals(FECableNetworkManager manager, BlockPos anyCablePos) {
+		FECableNetworkManager.FECableNetwork network = manager.getNetworkContaining(anyCablePos);
+		if (network == null) return EMPTY;
+		return totals(network).read();
+	}
 
-				long neighborLong = neighborPos.asLong();
-				if (!seenBySide[sideId].add(neighborLong)) continue;
+	static Totals totals(FECableNetworkManager.FECableNetwork network) {
+		FEEvents.Stats event = new FEEvents.Stats();
+		event.begin();
+		Totals totals = network.totals;
+		boolean scanned = totals == null;
+		if (scanned) {
+			totals = scan(network.getManager().lookup(), network);
+			network.totals = totals;
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.networkId = network.id;
+			event.scanned = scanned;
+			event.faces = network.graph.faceCount();
+			event.commit();
+		}
+		return totals;
+	}
 
-				// Skip other cables; only count storages attached to the network.
-				if (FEApi.CABLE.find(world, neighborPos, neighborSide) != null) continue;
+	private static Totals scan(CableGraphSource source, FECableNetworkManager.FECableNetwork network) {
+		ReferenceOpenHashSet<FEStorage> seenStorages = new ReferenceOpenHashSet<>();
+		ArrayList<FEStorage> endpoints = new ArrayList<>();
 
-				FEBlockEnergy def = FEApi.BLOCK_ENERGY.find(world, neighborPos, null);
-				if (def != null && !def.getSideMode(neighborSide).canInsert()) continue;
+		// Endpoint faces were collected when the network was built; each (pos, side) appears once and never
+		// belongs to another cable.
+		FECableGraph graph = network.graph;
+		for (int f = 0; f < graph.faceCount(); f++) {
+			BlockPos neighborPos = BlockPos.fromLong(graph.facePos[f]);
+			Direction neighborSide = graph.faceSide(f);
 
-				FEStorage storage = FEApi.STORAGE.find(world, neighborPos, neighborSide);
-				if (storage == null || !storage.supportsInsertion()) continue;
+			FEBlockEnergy def = source.findBlockEnergy(neighborPos);
+			if (def != null && !source.sideMode(def, neighborPos, neighborSide).canInsert()) continue;
 
-				long cap = storage.getCapacity();
-				long amt = storage.getAmount();
-				if (cap <= 0) continue;
-				if (amt < 0) amt = 0;
-				if (amt > cap) amt = cap;
+			FEStorage storage = source.findStorage(neighborPos, neighborSide);
+			if (storage == null || !storage.supportsInsertion()) continue;
 
-				totalCapacity = satAdd(totalCapacity, cap);
-				totalAmount = satAdd(totalAmount, amt);
-			}
+			FEStorage backing = storage.getBackingStorage();
+			if (!seenStorages.add(backing)) continue;
+			endpoints.add(backing);
 		}
 
-		return new Stats(totalAmount, totalCapacity);
+		return new Totals(network, endpoints);
 	}
 
 	private static long satAdd(long a, long b) {
@@ -106,4 +159,173 @@ public final class FECableNetworkStats {
 		if (r < 0 || r < a) return Long.MAX_VALUE;
 		return r;
 	}
+
+	/**
+	 * Insertable totals of one network, maintained from storage change notifications.
+	 *
+	 * <p>Listened endpoints keep their last seen amount/capacity in primitive arrays and contribute to exact running
+	 * sums; a query only has to poll endpoints that cannot notify. Sums fall back to a saturating recount if they
+	 * would overflow. The initial sums and recounts run over the arrays through {@link FESums}, vectorized if enabled.
+	 */
+	static final class Totals implements FEStorageListener {
+		private final FECableNetworkManager.FECableNetwork network;
+		private final FEStorage[] tracked;
+		private final long[] trackedAmount;
+		private final long[] trackedCapacity;
+		private final Reference2IntOpenHashMap<FEStorage> trackedIndex = new Reference2IntOpenHashMap<>();
+		private final FEStorage[] polled;
+
+		private long amount;
+		private long capacity;
+		private boolean overflowed;
+		private long polledAmount;
+		private long polledCapacity;
+		private boolean polledSpace;
+		private boolean full;
+		private boolean released;
+
+		private Totals(FECableNetworkManager.FECableNetwork network, ArrayList<FEStorage> endpoints) {
+			this.network = network;
+			trackedIndex.defaultReturnValue(-1);
+
+			ArrayList<FEStorage> listened = new ArrayList<>();
+			ArrayList<FEStorage> other = new ArrayList<>();
+			for (FEStorage storage : endpoints) {
+				if (storage.addListener(this)) {
+					listened.add(storage);
+				} else {
+					other.add(storage);
+				}
+			}
+
+			tracked = listened.toArray(new FEStorage[0]);
+			trackedAmount = new long[tracked.length];
+			trackedCapacity = new long[tracked.length];
+			polled = other.toArray(new FEStorage[0]);
+
+			for (int i = 0; i < tracked.length; i++) {
+				trackedIndex.put(tracked[i], i);
+				long cap = capacityOf(tracked[i]);
+				trackedCapacity[i] = cap;
+				trackedAmount[i] = amountOf(tracked[i], cap);
+			}
+			// Amounts never exceed capacities, so only the capacity sum can saturate first.
+			capacity = FESums.saturatingSum(trackedCapacity, tracked.length);
+			amount = FESums.saturatingSum(trackedAmount, tracked.length);
+			overflowed = capacity == Long.MAX_VALUE;
+			pollUntracked();
+			full = computeFull();
+		}
+
+		Stats read() {
+			if (polled.length > 0) {
+				pollUntracked();
+				updateFull();
+			}
+			return new Stats(totalAmount(), totalCapacity());
+		}
+
+		boolean isFull() {
+			if (polled.length > 0) {
+				pollUntracked();
+				updateFull();
+			}
+			return full;
+		}
+
+		@Override
+		public void onStorageChanged(FEStorage storage) {
+			if (released) return;
+			int i = trackedIndex.getInt(storage);
+			if (i < 0) return;
+
+			long cap = capacityOf(storage);
+			long amt = amountOf(storage, cap);
+			long prevCap = trackedCapacity[i];
+			long prevAmt = trackedAmount[i];
+			if (cap == prevCap && amt == prevAmt) return;
+
+			trackedCapacity[i] = cap;
+			trackedAmount[i] = amt;
+			if (!overflowed) {
+				add(-prevAmt, -prevCap);
+				add(amt, cap);
+			}
+			if (cap - amt > prevCap - prevAmt) {
+				network.onSpaceGained();
+			}
+			updateFull();
+		}
+
+		void release() {
+			if (released) return;
+			released = true;
+			for (FEStorage storage : tracked) {
+				storage.removeListener(this);
+			}
+		}
+
+		private void pollUntracked() {
+			long amt = 0;
+			long cap = 0;
+			boolean space = false;
+			for (FEStorage storage : polled) {
+				long c = capacityOf(storage);
+				long a = amountOf(storage, c);
+				cap = satAdd(cap, c);
+				amt = satAdd(amt, a);
+				space |= a < c;
+			}
+			polledAmount = amt;
+			polledCapacity = cap;
+			polledSpace = space;
+		}
+
+		private void add(long amt, long cap) {
+			try {
+				amount = Math.addExact(amount, amt);
+				capacity = Math.addExact(capacity, cap);
+			} catch (ArithmeticException e) {
+				overflowed = true;
+			}
+		}
+
+		private long totalAmount() {
+			if (!overflowed) return satAdd(amount, polledAmount);
+			return satAdd(FESums.saturatingSum(trackedAmount, trackedAmount.length), polledAmount);
+		}
+
+		private long totalCapacity() {
+			if (!overflowed) return satAdd(capacity, polledCapacity);
+			return satAdd(FESums.saturatingSum(trackedCapacity, trackedCapacity.length), polledCapacity);
+		}
+
+		/**
+		 * Full unless some endpoint has space. Decided per endpoint rather than from the totals, which are not exact
+		 * once saturated.
+		 */
+		private boolean computeFull() {
+			if (polledSpace) return false;
+			if (!overflowed) return amount >= capacity;
+			return !FESums.anyGreater(trackedCapacity, trackedAmount, trackedCapacity.length);
+		}
+
+		private void updateFull() {
+			boolean now = computeFull();
+			if (now == full) return;
+			full = now;
+			network.fireFullChanged(now);
+		}
+
+		private static long capacityOf(FEStorage storage) {
+			long cap = storage.getCapacity();
+			return cap <= 0 ? 0 : cap;
+		}
+
+		private static long amountOf(FEStorage storage, long cap) {
+			long amt = storage.getAmount();
+			if (amt < 0) return 0;
+			return Math.min(amt, cap);
+		}
+	}
 }
@@ -1,17 +1,88 @@
 package gavinx.fea.network;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
 
 /** Static access to per-world cable network managers. */
 public final class FECableNetworks {
 	private FECableNetworks() {}
 
 	private static final Map<ServerWorld, FECableNetworkManager> MANAGERS = new WeakHashMap<>();
+	// null unless route threads are enabled
+	private static ExecutorService routePool;
+	private static int routeThreads;
 
 	public static synchronized FECableNetworkManager get(ServerWorld world) {
 		return MANAGERS.computeIfAbsent(world, FECableNetworkManager::new);
 	}
+
+	/** The manager of {@code world} if one was already created, else null. */
+	public static synchronized FECableNetworkManager getIfPresent(ServerWorld world) {
+		return MANAGERS.get(world);
+	}
+
+	/**
+	 * Search the routes every world's next tick will need (those of {@link FENetworkScheduler} sides and of buffered
+	 * sources not cached yet) on up to {@code threads} worker threads at the start of each server tick, one world per
+	 * task, instead of inline on the server thread when a transfer first needs them. The server thread waits for the
+	 * searches and caches their routes before any world ticks; the routes are the same either way. Endpoint lookups,
+	 * network discovery, stats and the transfers themselves stay on the server thread, as they read the world and its
+	 * storages. Capped at the number of processors; 0 (the default) disables it.
+	 */
+	public static synchronized void setRouteThreads(int threads) {
+		int n = Math.max(0, Math.min(threads, Runtime.getRuntime().availableProcessors()));
+		if (n == routeThreads) return;
+		if (routePool != null) routePool.shutdown();
+		routeThreads = n;
+		if (n == 0) {
+			routePool = null;
+			return;
+		}
+		AtomicInteger created = new AtomicInteger();
+		routePool = Executors.newFixedThreadPool(n, task -> {
+			Thread thread = new Thread(task, "FEA Route Search #" + created.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public static synchronized int getRouteThreads() {
+		return routeThreads;
+	}
+
+	/** Run the route searches of {@link #setRouteThreads(int)}. Called at the start of every server tick. */
+	public static void prefetchRoutes() {
+		ExecutorService pool;
+		ArrayList<FECableNetworkManager> managers;
+		synchronized (FECableNetworks.class) {
+			if (routePool == null || MANAGERS.isEmpty()) return;
+			pool = routePool;
+			managers = new ArrayList<>(MANAGERS.values());
+		}
+		FEParallelRouting.prefetch(managers, pool);
+	}
+
+	/** {@link FECableNetworkManager#flushBuffers()} of every world. Called when the server stops. */
+	public static void flushBuffers() {
+		ArrayList<FECableNetworkManager> managers;
+		synchronized (FECableNetworks.class) {
+			managers = new ArrayList<>(MANAGERS.values());
+		}
+		for (FECableNetworkManager manager : managers) {
+			manager.flushBuffers();
+		}
+	}
+
+	/** See {@link FECableNetworkManager#onSideConfigChanged(BlockPos)}. No-op if the world has no manager yet. */
+	public static void onSideConfigChanged(ServerWorld world, BlockPos pos) {
+		FECableNetworkManager manager = getIfPresent(world);
+		if (manager != null) manager.onSideConfigChanged(pos);
+	}
 }
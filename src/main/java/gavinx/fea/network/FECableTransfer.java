@@ -1,17 +1,19 @@
 package gavinx.fea.network;
 
 import gavinx.fea.api.FECable;
-import gavinx.fea.api.FEApi;
 import gavinx.fea.api.FEBlockEnergy;
 import gavinx.fea.api.FEStorage;
+import gavinx.fea.impl.SimpleFEStorage;
 
-import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
 
 import net.fabricmc.fabric.api.transfer.v1.transaction.Transaction;
 import net.minecraft.server.world.ServerWorld;
@@ -19,131 +21,607 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 
 /**
- * Pathfinds through connected cables and transfers FE from a source to reachable consumers.
+ * Pathfinds through connected cables and transfers FE from a source to reachable consumers, or
+ * {@link #pullInto pulls} it into a consumer from reachable sources.
+ *
+ * <p>Paths are searched on the network's compiled graph (cable faces and registered links), with runs of cables
+ * between endpoints contracted into single edges (see {@link FEContractedGraph}), and the resulting consumer order is
+ * cached per entry face, so a steady-state tick performs no pathfinding. The search runs once per
+ * start cable, relative to that cable, and is shared by every source entering it; endpoint storages are looked up
+ * once per network. With
+ * {@link FECableNetworkManager#setIncrementalRouting(boolean) incremental routing} the shortest-path trees behind
+ * the routes are kept and repaired after topology changes instead of searched again.
  *
  * <p>Semantics:
  * - path capacity is treated as a bottleneck (minimum segment capacity)
- * - path resistance is additive and clamped to {@code 0..100}
- * - delivered energy is {@code floor(sent * (100 - resistance) / 100)}
+ * - path resistance is additive in parts per million and clamped to {@code 0..1_000_000}
+ * - delivered energy is {@code floor(sent * (1_000_000 - resistance) / 1_000_000)}, computed exactly; the fraction
+ *   rounded away is carried on the network into its next transfer, so loss rounds once per network rather than once
+ *   per target (see {@link FELoss})
+ * - the FE lost is accumulated per network, see {@link FECableNetworkManager.FECableNetwork#getLostFE()}
  * - targets are attempted in ascending resistance, then descending capacity
+ * - storages sharing a {@link FEStorage#getBackingStorage() backing storage} are served once, via their best path
+ *   that can carry FE
+ * - a non-simulated distribution that moves nothing while the source holds FE parks the source; see
+ *   {@link FECableNetworkManager#shouldTick(BlockPos, Direction)}
+ *
+ * <p>With {@link FECableNetworkManager#setBufferedTransfer(boolean) buffered transfer}, distributions only fill the
+ * network's buffer and {@link #drainBuffers} delivers it once per tick.
  */
 public final class FECableTransfer {
+	private static final Direction[] DIRECTIONS = Direction.values();
+
 	private FECableTransfer() {}
 
-	private static final class State {
-		final long pos;
-		final Direction enterSide;
-		final int resistance;
-		final long capacity;
+	/**
+	 * Consumer faces reachable from one entry face of a network, in attempt order. Built from the network's
+	 * {@link FECableGraph} and cached on the network until it is rebuilt or a chunk it touches (un)loads.
+	 */
+	static final class Route {
+		static final Route EMPTY = new Route(new BlockPos[0], new Direction[0], new int[0], new long[0]);
 
-		State(long pos, Direction enterSide, int resistance, long capacity) {
-			this.pos = pos;
-			this.enterSide = enterSide;
-			this.resistance = resistance;
-			this.capacity = capacity;
-		}
-	}
+		final BlockPos[] pos;
+		final Direction[] side;
+		final int[] resistance;
+		final long[] capacity;
 
-	private static final class Target {
-		final BlockPos pos;
-		final Direction side;
-		final int resistance;
-		final long capacity;
-
-		Target(BlockPos pos, Direction side, int resistance, long capacity) {
+		private Route(BlockPos[] pos, Direction[] side, int[] resistance, long[] capacity) {
 			this.pos = pos;
 			this.side = side;
 			this.resistance = resistance;
 			this.capacity = capacity;
 		}
+
+		int size() {
+			return pos.length;
+		}
 	}
 
 	/**
 	 * Push energy from the given source side into any consumers reachable through cables.
 	 *
+	 * <p>Returns 0 without doing any work while the source is parked.
+	 *
 	 * @param maxExtractFE max FE to extract from source (pre-loss)
 	 * @param simulate if true, do not commit (no lasting side effects)
 	 * @return FE extracted from source (pre-loss)
 	 */
 	public static long distributeFrom(ServerWorld world, BlockPos sourcePos, Direction sourceSide, long maxExtractFE,
 			boolean simulate) {
-		if (maxExtractFE <= 0) return 0;
+		return distributeFrom(FECableNetworks.get(world), sourcePos, sourceSide, maxExtractFE, simulate);
+	}
 
-		FEBlockEnergy sourceDef = FEApi.BLOCK_ENERGY.find(world, sourcePos, null);
-		if (sourceDef != null && !sourceDef.getSideMode(sourceSide).canExtract()) return 0;
+	/**
+	 * Same as {@link #distributeFrom(ServerWorld, BlockPos, Direction, long, boolean)} on the networks of
+	 * {@code manager}, which may read a {@link CableGraphSource} other than a world.
+	 */
+	public static long distributeFrom(FECableNetworkManager manager, BlockPos sourcePos, Direction sourceSide,
+			long maxExtractFE, boolean simulate) {
+		FEEvents.Transfer event = new FEEvents.Transfer();
+		event.begin();
+		long extracted = distributeFrom(manager, sourcePos, sourceSide, maxExtractFE, simulate, event);
+		event.end();
+		if (event.shouldCommit()) {
+			event.pos = sourcePos.asLong();
+			event.simulate = simulate;
+			event.requestedFE = maxExtractFE;
+			event.movedFE = extracted;
+			event.commit();
+		}
+		return extracted;
+	}
+
+	private static long distributeFrom(FECableNetworkManager manager, BlockPos sourcePos, Direction sourceSide,
+			long maxExtractFE, boolean simulate, FEEvents.Transfer event) {
+		if (maxExtractFE <= 0) return 0;
+		if (!simulate && !manager.shouldTick(sourcePos, sourceSide)) return 0;
+		CableGraphSource lookup = manager.lookup();
+
+		FEBlockEnergy sourceDef = lookup.findBlockEnergy(sourcePos);
+		long outputRate = Long.MAX_VALUE;
+		if (sourceDef != null) {
+			if (!lookup.sideMode(sourceDef, sourcePos, sourceSide).canExtract()) return 0;
+			outputRate = sourceDef.getMaxOutputRateFE(sourceSide);
+			// Used up for this tick; not a reason to park.
+			maxExtractFE = Math.min(maxExtractFE, manager.remainingOutput(sourcePos.asLong(), sourceSide, outputRate));
+			if (maxExtractFE <= 0) return 0;
+		}
 
-		FEStorage source = FEApi.STORAGE.find(world, sourcePos, sourceSide);
+		FEStorage source = lookup.findStorage(sourcePos, sourceSide);
 		if (source == null || !source.supportsExtraction()) return 0;
 
 		BlockPos startCablePos = sourcePos.offset(sourceSide);
 		Direction enterSide = sourceSide.getOpposite();
-		FECable startCable = FEApi.CABLE.find(world, startCablePos, enterSide);
+		FECable startCable = lookup.findCable(startCablePos, enterSide);
 		if (startCable == null) return 0;
 
-		FECableNetworkManager.FECableNetwork network = FECableNetworks.get(world).getNetworkContaining(startCablePos);
+		FECableNetworkManager.FECableNetwork network = manager.getNetworkContaining(startCablePos);
 		if (network == null) return 0;
+		event.networkId = network.id;
+		if (manager.isBufferedTransfer()) {
+			long extracted = buffer(manager, network, source, startCable, maxExtractFE, simulate);
+			event.buffered = true;
+			event.transactions = 1;
+			if (simulate) return extracted;
+			manager.addBuffered(network, sourcePos.asLong(), sourceSide, extracted);
+			FETraceRecorder.onUntraced(manager.getWorld(), network.id, FETraceRecorder.UNTRACED_BUFFER, extracted);
+			if (outputRate != Long.MAX_VALUE) {
+				manager.addOutput(sourcePos.asLong(), sourceSide, extracted);
+			}
+			return extracted;
+		}
+
+		Route route = route(network, startCablePos, enterSide, startCable);
+		event.targets = route.size();
+		if (route.size() == 0) {
+			if (!simulate && source.getAmount() > 0) {
+				manager.park(network, sourcePos, sourceSide);
+			}
+			return 0;
+		}
 
-		ArrayList<Target> targets = findTargets(world, network, startCablePos, enterSide);
-		if (targets.isEmpty()) return 0;
+		Plan plan = plan(manager, lookup, route, sourcePos, maxExtractFE);
+		plan.lossCarry = network.lossCarry;
+		FETraceRecorder recorder = FETraceRecorder.forWorld(manager.getWorld());
+		long[] before = recorder == null ? null : FETraceRecorder.capture(source, plan.consumers);
 
-		targets.sort(Comparator.comparingInt((Target t) -> t.resistance).thenComparingLong(t -> -t.capacity));
+		long extractedTotal = distribute(source, route, plan, maxExtractFE, simulate);
+		event.transactions = plan.transactions;
+		event.lostFE = plan.lost;
 
-		long remaining = maxExtractFE;
-		long extractedTotal = 0;
+		if (recorder != null) {
+			recorder.request(network, sourcePos, sourceSide, startCable, route, source, plan, before, maxExtractFE,
+					simulate, extractedTotal);
+		}
+		if (simulate) return extractedTotal;
+
+		settle(manager, network, route, plan);
+		if (outputRate != Long.MAX_VALUE) {
+			manager.addOutput(sourcePos.asLong(), sourceSide, extractedTotal);
+		}
+		if (extractedTotal == 0 && !plan.rateLimited && source.getAmount() > 0) {
+			manager.park(network, sourcePos, sourceSide);
+		}
+		return extractedTotal;
+	}
+
+	/** Book a committed distribution: the network's loss, and the consumers' input rates and demand samples. */
+	private static void settle(FECableNetworkManager manager, FECableNetworkManager.FECableNetwork network, Route route,
+			Plan plan) {
+		network.addLoss(plan.lost, plan.lossCarry);
+		for (int t = 0; t < route.size(); t++) {
+			if (plan.consumers[t] == null) continue;
+			long p = route.pos[t].asLong();
+			if (plan.inputLimit[t] != Long.MAX_VALUE) {
+				manager.addInput(p, route.side[t], plan.delivered[t]);
+			}
+			if (plan.probed[t]) {
+				manager.sampleDemand(p, route.side[t], plan.delivered[t], plan.saturated[t]);
+			}
+		}
+	}
 
+	/**
+	 * Buffered transfer: extract from {@code source} what fits into the network's buffer, at most one transfer
+	 * capacity of the cable it enters. The caller books it into the buffer.
+	 *
+	 * @return FE extracted from source
+	 */
+	private static long buffer(FECableNetworkManager manager, FECableNetworkManager.FECableNetwork network,
+			FEStorage source, FECable startCable, long maxExtractFE, boolean simulate) {
+		long entryCap = Math.max(0L, startCable.getTransferCapacityFE());
+		// A network of one cable has no edges to size its buffer from.
+		long space = Math.max(network.getBufferCapacityFE(), entryCap) - network.getBufferedFE();
+		long amount = Math.min(maxExtractFE, Math.min(entryCap, space));
+		if (amount <= 0) return 0;
 		try (Transaction outer = Transaction.openOuter()) {
-			for (Target target : targets) {
-				if (remaining <= 0) break;
-				if (target.pos.equals(sourcePos)) continue;
+			long extracted = source.extract(amount, outer);
+			if (!simulate) outer.commit();
+			return extracted;
+		}
+	}
 
-				FEBlockEnergy consumerDef = FEApi.BLOCK_ENERGY.find(world, target.pos, null);
-				if (consumerDef != null && !consumerDef.getSideMode(target.side).canInsert()) continue;
+	/**
+	 * Deliver the buffered FE of every source of {@code manager} as a distribution from that source would: along the
+	 * route from its face, with its loss, priorities and the consumers' rate limits. What consumers do not take stays
+	 * buffered; FE buffered next to a removed cable is lost. Each drain is recorded by {@link FETraceRecorder} as a
+	 * distribution from a source holding the buffered FE. Called by {@link FECableNetworkManager#tick()}.
+	 */
+	static void drainBuffers(FECableNetworkManager manager) {
+		CableGraphSource lookup = manager.lookup();
+		for (Direction sourceSide : DIRECTIONS) {
+			Long2LongOpenHashMap entries = manager.buffered(sourceSide);
+			if (entries.isEmpty()) continue;
+			Direction enterSide = sourceSide.getOpposite();
+			for (long p : entries.keySet().toLongArray()) {
+				long amount = entries.get(p);
+				BlockPos sourcePos = BlockPos.fromLong(p);
+				BlockPos startCablePos = sourcePos.offset(sourceSide);
+				FECable startCable = lookup.findCable(startCablePos, enterSide);
+				if (startCable == null) {
+					manager.loseBuffered(p, sourceSide, amount);
+					continue;
+				}
+				// Null while a budgeted rebuild is pending; the entry waits for it.
+				FECableNetworkManager.FECableNetwork network = manager.getNetworkContaining(startCablePos);
+				if (network == null) continue;
+
+				FEEvents.Transfer event = new FEEvents.Transfer();
+				event.begin();
+				Route route = route(network, startCablePos, enterSide, startCable);
+				long drained = 0;
+				Plan plan = null;
+				if (route.size() > 0) {
+					plan = plan(manager, lookup, route, sourcePos, amount);
+					plan.lossCarry = network.lossCarry;
+					FEStorage buffer = new SimpleFEStorage(amount, amount, false, true);
+					FETraceRecorder recorder = FETraceRecorder.forWorld(manager.getWorld());
+					long[] before = recorder == null ? null : FETraceRecorder.capture(buffer, plan.consumers);
+					drained = distribute(buffer, route, plan, amount, false);
+					if (recorder != null) {
+						recorder.request(network, sourcePos, sourceSide, startCable, route, buffer, plan, before, amount,
+								false, drained);
+					}
+					settle(manager, network, route, plan);
+					manager.takeBuffered(network, p, sourceSide, drained);
+				}
+				event.end();
+				if (event.shouldCommit()) {
+					event.networkId = network.id;
+					event.pos = p;
+					event.buffered = true;
+					event.targets = route.size();
+					event.requestedFE = amount;
+					event.movedFE = drained;
+					if (plan != null) {
+						event.transactions = plan.transactions;
+						event.lostFE = plan.lost;
+					}
+					event.commit();
+				}
+			}
+		}
+	}
 
-				FEStorage consumer = FEApi.STORAGE.find(world, target.pos, target.side);
-				if (consumer == null || !consumer.supportsInsertion()) continue;
-				if (consumer == source) continue;
+	/**
+	 * Draw energy into the given consumer side from any extractable storages reachable through cables.
+	 *
+	 * <p>The mirror of {@link #distributeFrom}: same resistance semantics and loss carry, and the paths are searched
+	 * once per start cable and cached on the network. Sources are attempted in ascending resistance (including the
+	 * cable face they feed), then descending capacity; each gives at most what its
+	 * {@link FEBlockEnergy#getMaxOutputRateFE output rate} has left this tick. Pulls are not parked, and
+	 * {@link FETraceRecorder} only marks them, it does not record them for replay.
+	 *
+	 * @param maxFE max FE to insert into the consumer (post-loss)
+	 * @param simulate if true, do not commit (no lasting side effects)
+	 * @return FE inserted into the consumer (post-loss)
+	 */
+	public static long pullInto(ServerWorld world, BlockPos consumerPos, Direction consumerSide, long maxFE,
+			boolean simulate) {
+		return pullInto(FECableNetworks.get(world), consumerPos, consumerSide, maxFE, simulate);
+	}
 
-				long pathCap = Math.min(remaining, target.capacity);
-				if (pathCap <= 0) continue;
+	/**
+	 * Same as {@link #pullInto(ServerWorld, BlockPos, Direction, long, boolean)} on the networks of {@code manager}.
+	 */
+	public static long pullInto(FECableNetworkManager manager, BlockPos consumerPos, Direction consumerSide,
+			long maxFE, boolean simulate) {
+		FEEvents.Transfer event = new FEEvents.Transfer();
+		event.begin();
+		long received = pullInto(manager, consumerPos, consumerSide, maxFE, simulate, event);
+		event.end();
+		if (event.shouldCommit()) {
+			event.pos = consumerPos.asLong();
+			event.pull = true;
+			event.simulate = simulate;
+			event.requestedFE = maxFE;
+			event.movedFE = received;
+			event.commit();
+		}
+		return received;
+	}
+
+	private static long pullInto(FECableNetworkManager manager, BlockPos consumerPos, Direction consumerSide,
+			long maxFE, boolean simulate, FEEvents.Transfer event) {
+		if (maxFE <= 0) return 0;
+		CableGraphSource lookup = manager.lookup();
+
+		FEBlockEnergy consumerDef = lookup.findBlockEnergy(consumerPos);
+		long inputRate = Long.MAX_VALUE;
+		if (consumerDef != null) {
+			if (!lookup.sideMode(consumerDef, consumerPos, consumerSide).canInsert()) return 0;
+			inputRate = consumerDef.getMaxInputRateFE(consumerSide);
+			maxFE = Math.min(maxFE, manager.remainingInput(consumerPos.asLong(), consumerSide, inputRate));
+			if (maxFE <= 0) return 0;
+		}
+
+		FEStorage consumer = lookup.findStorage(consumerPos, consumerSide);
+		if (consumer == null || !consumer.supportsInsertion()) return 0;
+
+		BlockPos startCablePos = consumerPos.offset(consumerSide);
+		if (lookup.findCable(startCablePos, consumerSide.getOpposite()) == null) return 0;
+
+		FECableNetworkManager.FECableNetwork network = manager.getNetworkContaining(startCablePos);
+		if (network == null) return 0;
+		int start = network.graph.indexOf(startCablePos.asLong());
+		if (start < 0) return 0;
+		event.networkId = network.id;
+
+		Route route = pullRoute(network, start);
+		event.targets = route.size();
+		if (route.size() == 0) return 0;
+
+		// Sources take the consumers' slots; inputLimit holds what each may still give this tick.
+		Plan plan = new Plan(route.size());
+		for (int t = 0; t < route.size(); t++) {
+			BlockPos sourcePos = route.pos[t];
+			Direction sourceSide = route.side[t];
+			if (sourcePos.equals(consumerPos)) continue;
+
+			FEBlockEnergy sourceDef = lookup.findBlockEnergy(sourcePos);
+			if (sourceDef != null) {
+				if (!lookup.sideMode(sourceDef, sourcePos, sourceSide).canExtract()) continue;
+				long limit = manager.remainingOutput(sourcePos.asLong(), sourceSide,
+						sourceDef.getMaxOutputRateFE(sourceSide));
+				if (limit <= 0) continue;
+				plan.inputLimit[t] = limit;
+			}
+
+			FEStorage source = lookup.findStorage(sourcePos, sourceSide);
+			if (source == null || !source.supportsExtraction()) continue;
+			plan.consumers[t] = source;
+		}
+		plan.lossCarry = network.lossCarry;
+
+		long[] extracted = new long[route.size()];
+		long received = collect(consumer, route, plan, maxFE, extracted, simulate);
+		event.transactions = plan.transactions;
+		event.lostFE = plan.lost;
+		if (simulate) return received;
+
+		FETraceRecorder.onUntraced(manager.getWorld(), network.id, FETraceRecorder.UNTRACED_PULL, received);
+		network.addLoss(plan.lost, plan.lossCarry);
+		if (inputRate != Long.MAX_VALUE) {
+			manager.addInput(consumerPos.asLong(), consumerSide, received);
+		}
+		for (int t = 0; t < route.size(); t++) {
+			if (plan.inputLimit[t] != Long.MAX_VALUE) {
+				manager.addOutput(route.pos[t].asLong(), route.side[t], extracted[t]);
+			}
+		}
+		return received;
+	}
+
+	/**
+	 * Per-target inputs and results of one distribution, aligned with the route.
+	 *
+	 * <p>Inputs: the storage to insert into (null where the target does not accept FE from the network), the FE the
+	 * target may still take this tick under its {@link FEBlockEnergy#getMaxInputRateFE input rate}, and an optional
+	 * first-pass share of the request from demand estimates. Results: FE delivered, whether the target was probed and
+	 * whether its last probe accepted everything offered (then its demand may be higher than what it got).
+	 *
+	 * <p>{@code lossCarry} is the network's {@link FELoss loss carry} going in and coming out; {@code lost} sums the
+	 * FE lost to resistance by the committed steps.
+	 *
+	 * <p>Targets are served in route order unless some have a non-zero {@link FEBlockEnergy#getInputPriority input
+	 * priority}; then {@code order} holds the targets by priority descending, route order within a priority.
+	 */
+	static final class Plan {
+		final FEStorage[] consumers;
+		final long[] inputLimit;
+		long[] allocation;
+		final long[] delivered;
+		final boolean[] probed;
+		final boolean[] saturated;
+		boolean rateLimited;
+		long lossCarry;
+		long lost;
+		// nested transactions opened, for FEEvents.Transfer
+		int transactions;
+		// null while every priority is 0
+		int[] priority;
+		int[] order;
+
+		Plan(int size) {
+			consumers = new FEStorage[size];
+			inputLimit = new long[size];
+			delivered = new long[size];
+			probed = new boolean[size];
+			saturated = new boolean[size];
+			Arrays.fill(inputLimit, Long.MAX_VALUE);
+		}
+
+		int size() {
+			return consumers.length;
+		}
+
+		/** The {@code k}-th target to serve. */
+		int target(int k) {
+			return order == null ? k : order[k];
+		}
+
+		void setPriority(int t, int p) {
+			if (p == 0 && priority == null) return;
+			if (priority == null) priority = new int[size()];
+			priority[t] = Math.max(FEBlockEnergy.MIN_INPUT_PRIORITY, Math.min(FEBlockEnergy.MAX_INPUT_PRIORITY, p));
+		}
+
+		/**
+		 * Derive {@code order} from the priorities: a stable counting sort over the fixed priority range, so linear in
+		 * the targets however many priorities are in use.
+		 */
+		void orderByPriority() {
+			if (priority == null) return;
+			int n = size();
+			int[] bucketStart = new int[PRIORITY_LEVELS + 1];
+			for (int t = 0; t < n; t++) {
+				bucketStart[bucket(priority[t]) + 1]++;
+			}
+			for (int b = 0; b < PRIORITY_LEVELS; b++) {
+				bucketStart[b + 1] += bucketStart[b];
+			}
+			order = new int[n];
+			for (int t = 0; t < n; t++) {
+				order[bucketStart[bucket(priority[t])]++] = t;
+			}
+		}
+
+		/** Bucket of a priority; the highest priority comes first. */
+		private static int bucket(int p) {
+			return FEBlockEnergy.MAX_INPUT_PRIORITY - p;
+		}
+	}
+
+	private static final int PRIORITY_LEVELS = FEBlockEnergy.MAX_INPUT_PRIORITY - FEBlockEnergy.MIN_INPUT_PRIORITY + 1;
 
-				// Simulate both ends to pick a safe amount, then perform an atomic nested commit.
-				long sendMax;
-				try (Transaction sim = Transaction.openNested(outer)) {
-					sendMax = source.extract(pathCap, sim);
+	/**
+	 * Resolve the consumers of {@code route} (sided IO of {@link FEBlockEnergy}, missing storage, the source block
+	 * itself) together with their remaining input allowance, and pre-allocate a short supply when demand smoothing
+	 * is enabled.
+	 */
+	private static Plan plan(FECableNetworkManager manager, CableGraphSource lookup, Route route, BlockPos sourcePos,
+			long maxExtractFE) {
+		Plan plan = new Plan(route.size());
+		for (int t = 0; t < route.size(); t++) {
+			BlockPos targetPos = route.pos[t];
+			Direction targetSide = route.side[t];
+			if (targetPos.equals(sourcePos)) continue;
+
+			FEBlockEnergy consumerDef = lookup.findBlockEnergy(targetPos);
+			if (consumerDef != null) {
+				if (!lookup.sideMode(consumerDef, targetPos, targetSide).canInsert()) continue;
+				long limit = manager.remainingInput(targetPos.asLong(), targetSide,
+						consumerDef.getMaxInputRateFE(targetSide));
+				if (limit <= 0) {
+					plan.rateLimited = true;
+					continue;
 				}
-				if (sendMax <= 0) continue;
+				plan.inputLimit[t] = limit;
+				plan.setPriority(t, consumerDef.getInputPriority(targetSide));
+			}
 
-				long deliveredMax = applyResistance(sendMax, target.resistance);
-				if (deliveredMax <= 0) continue;
+			FEStorage consumer = lookup.findStorage(targetPos, targetSide);
+			if (consumer == null || !consumer.supportsInsertion()) continue;
+			plan.consumers[t] = consumer;
+		}
+		plan.orderByPriority();
+
+		if (manager.isDemandSmoothingEnabled()) {
+			// Pre-loss FE each consumer is expected to take.
+			long[] need = new long[route.size()];
+			long total = 0;
+			for (int t = 0; t < route.size(); t++) {
+				if (plan.consumers[t] == null) continue;
+				long estimate = manager.demandEstimate(route.pos[t].asLong(), route.side[t]);
+				// Never probed: assume it could take the whole request, so it is probed with a fair share.
+				if (estimate < 0) estimate = Long.MAX_VALUE;
+				estimate = Math.min(estimate, plan.inputLimit[t]);
+				long preLoss = estimate == Long.MAX_VALUE ? Long.MAX_VALUE
+						: FELoss.sent(estimate, route.resistance[t], 0);
+				need[t] = Math.min(maxExtractFE, Math.min(route.capacity[t], preLoss));
+				total = satAdd(total, need[t]);
+			}
+			if (total > maxExtractFE) {
+				if (plan.order == null) {
+					for (int t = 0; t < route.size(); t++) {
+						need[t] = mulDiv(need[t], maxExtractFE, total);
+					}
+				} else {
+					allocateByPriority(plan, need, maxExtractFE);
+				}
+				plan.allocation = need;
+			}
+		}
+		return plan;
+	}
 
-				long acceptedMax;
-				try (Transaction sim = Transaction.openNested(outer)) {
-					acceptedMax = consumer.insert(deliveredMax, sim);
+	/**
+	 * Scale {@code need} to {@code supply} priority by priority: higher priorities keep their full need while the
+	 * supply lasts, the priority where it runs out is scaled proportionally, lower ones get nothing.
+	 */
+	private static void allocateByPriority(Plan plan, long[] need, long supply) {
+		int n = plan.size();
+		long left = supply;
+		for (int k = 0; k < n;) {
+			int p = plan.priority[plan.order[k]];
+			int end = k;
+			long bucketNeed = 0;
+			while (end < n && plan.priority[plan.order[end]] == p) {
+				bucketNeed = satAdd(bucketNeed, need[plan.order[end]]);
+				end++;
+			}
+			if (bucketNeed > left) {
+				for (int i = k; i < end; i++) {
+					int t = plan.order[i];
+					need[t] = mulDiv(need[t], left, bucketNeed);
 				}
-				if (acceptedMax <= 0) continue;
+			}
+			left -= Math.min(left, bucketNeed);
+			k = end;
+		}
+	}
 
-				long send = inverseResistanceCeil(acceptedMax, target.resistance);
-				send = Math.min(send, pathCap);
-				if (send <= 0) continue;
+	/**
+	 * Move FE from {@code source} into the resolved consumers of {@code plan}, in priority then route order.
+	 * Independent of the world, so traces can be replayed against it.
+	 *
+	 * <p>With an allocation, a first pass serves each consumer up to its share and a second pass hands what is left
+	 * to consumers in the same order; targets that got their full share in the first pass are only visited again if
+	 * they could take more.
+	 *
+	 * @return FE extracted from source (pre-loss)
+	 */
+	static long distribute(FEStorage source, Route route, Plan plan, long maxExtractFE, boolean simulate) {
+		long remaining = maxExtractFE;
+		long extractedTotal = 0;
+		FEStorage sourceBacking = source.getBackingStorage();
+		// backing storage -> the target serving it
+		Reference2IntOpenHashMap<FEStorage> servedBy = new Reference2IntOpenHashMap<>();
+		servedBy.defaultReturnValue(-1);
+		long[] sent = new long[route.size()];
 
-				try (Transaction step = Transaction.openNested(outer)) {
-					long extracted = source.extract(send, step);
-					if (extracted != send) {
-						continue;
-					}
+		plan.transactions++;
+		try (Transaction outer = Transaction.openOuter()) {
+			for (int k = 0; k < route.size(); k++) {
+				if (remaining <= 0) break;
+				int t = plan.target(k);
+				FEStorage consumer = plan.consumers[t];
+				if (consumer == null) continue;
 
-					long delivered = applyResistance(extracted, target.resistance);
-					if (delivered != acceptedMax) {
-						// Something changed between simulation and execution; abort this target.
-						continue;
-					}
+				FEStorage consumerBacking = consumer.getBackingStorage();
+				if (consumerBacking == sourceBacking || !isFree(servedBy, consumerBacking, t)) {
+					plan.consumers[t] = null;
+					continue;
+				}
 
-					long inserted = consumer.insert(delivered, step);
-					if (inserted != delivered) {
-						continue;
-					}
+				long pathCap = Math.min(remaining, route.capacity[t]);
+				if (plan.allocation != null) pathCap = Math.min(pathCap, plan.allocation[t]);
+				long inputLeft = plan.inputLimit[t] - plan.delivered[t];
+				// A face that can carry nothing leaves its storage to the storage's other faces.
+				if (pathCap <= 0 || inputLeft <= 0) continue;
+				servedBy.put(consumerBacking, t);
+				long extracted = transfer(source, consumer, route.resistance[t], pathCap, inputLeft, plan, t, outer);
+				sent[t] += extracted;
+				extractedTotal += extracted;
+				remaining -= extracted;
+			}
 
-					step.commit();
+			if (plan.allocation != null) {
+				for (int k = 0; k < route.size() && remaining > 0; k++) {
+					int t = plan.target(k);
+					FEStorage consumer = plan.consumers[t];
+					if (consumer == null) continue;
+					// A consumer that did not take its whole share has no room left.
+					if (plan.probed[t] && !plan.saturated[t]) continue;
+					FEStorage consumerBacking = consumer.getBackingStorage();
+					if (!isFree(servedBy, consumerBacking, t)) continue;
+
+					long pathCap = Math.min(remaining, route.capacity[t] - sent[t]);
+					long inputLeft = plan.inputLimit[t] - plan.delivered[t];
+					if (pathCap <= 0 || inputLeft <= 0) continue;
+					servedBy.put(consumerBacking, t);
+					long extracted = transfer(source, consumer, route.resistance[t], pathCap, inputLeft, plan, t, outer);
+					sent[t] += extracted;
 					extractedTotal += extracted;
 					remaining -= extracted;
 				}
@@ -153,115 +631,375 @@ public final class FECableTransfer {
 				outer.commit();
 			}
 		}
-
 		return extractedTotal;
 	}
 
-	private static ArrayList<Target> findTargets(ServerWorld world, FECableNetworkManager.FECableNetwork network,
-			BlockPos startPos, Direction startEnterSide) {
-		PriorityQueue<State> pq = new PriorityQueue<>(Comparator.comparingInt((State s) -> s.resistance)
-				.thenComparingLong(s -> -s.capacity));
-
-		Long2IntOpenHashMap[] bestRes = new Long2IntOpenHashMap[6];
-		Long2LongOpenHashMap[] bestCap = new Long2LongOpenHashMap[6];
-		for (int i = 0; i < 6; i++) {
-			bestRes[i] = new Long2IntOpenHashMap();
-			bestRes[i].defaultReturnValue(Integer.MAX_VALUE);
-			bestCap[i] = new Long2LongOpenHashMap();
-			bestCap[i].defaultReturnValue(0L);
-		}
-
-		long startLong = startPos.asLong();
-		FECable startCable = FEApi.CABLE.find(world, startPos, startEnterSide);
-		int r0 = startCable == null ? 100 : startCable.getResistancePercentClamped();
-		long c0 = startCable == null ? 0 : Math.max(0L, startCable.getTransferCapacityFE());
-
-		int startIdx = startEnterSide.getId();
-		bestRes[startIdx].put(startLong, r0);
-		bestCap[startIdx].put(startLong, c0);
-		pq.add(new State(startLong, startEnterSide, r0, c0));
-
-		@SuppressWarnings("unchecked")
-		Long2ObjectOpenHashMap<Target>[] targets = new Long2ObjectOpenHashMap[6];
-		for (int i = 0; i < 6; i++) {
-			targets[i] = new Long2ObjectOpenHashMap<>();
-		}
-
-		while (!pq.isEmpty()) {
-			State cur = pq.poll();
-			int curIdx = cur.enterSide.getId();
-			if (cur.resistance != bestRes[curIdx].get(cur.pos) || cur.capacity != bestCap[curIdx].get(cur.pos)) continue;
-
-			BlockPos curPos = BlockPos.fromLong(cur.pos);
-
-			for (Direction out : Direction.values()) {
-				if (FEApi.CABLE.find(world, curPos, out) == null) continue;
-
-				BlockPos neighborPos = curPos.offset(out);
-				Direction neighborEnter = out.getOpposite();
-
-				// If the neighbor exposes a cable on the opposite side, traverse.
-				// This intentionally does not rely on cached network membership; it prevents false dead-ends
-				// in cyclic networks or in edge cases where the network cache is temporarily stale.
-				FECable nextCable = FEApi.CABLE.find(world, neighborPos, neighborEnter);
-				if (nextCable != null) {
-					int nextR = clampPercent(cur.resistance + nextCable.getResistancePercentClamped());
-					long nextC = Math.min(cur.capacity, Math.max(0L, nextCable.getTransferCapacityFE()));
-					int nextIdx = neighborEnter.getId();
-					long nextPosLong = neighborPos.asLong();
-
-					int prevR = bestRes[nextIdx].get(nextPosLong);
-					long prevC = bestCap[nextIdx].get(nextPosLong);
-					boolean better = nextR < prevR || (nextR == prevR && nextC > prevC);
-					if (better) {
-						bestRes[nextIdx].put(nextPosLong, nextR);
-						bestCap[nextIdx].put(nextPosLong, nextC);
-						pq.add(new State(nextPosLong, neighborEnter, nextR, nextC));
-					}
+	/**
+	 * Move up to {@code maxFE} (post-loss) into {@code consumer} from the sources of a pull route, in route order.
+	 * {@code plan.consumers} holds the resolved sources and {@code plan.inputLimit} what each may give (pre-loss);
+	 * {@code extracted} receives the FE taken from each.
+	 *
+	 * @return FE inserted into consumer (post-loss)
+	 */
+	static long collect(FEStorage consumer, Route route, Plan plan, long maxFE, long[] extracted, boolean simulate) {
+		long wanted = maxFE;
+		long received = 0;
+		FEStorage consumerBacking = consumer.getBackingStorage();
+		ReferenceOpenHashSet<FEStorage> used = new ReferenceOpenHashSet<>();
+
+		plan.transactions++;
+		try (Transaction outer = Transaction.openOuter()) {
+			for (int t = 0; t < route.size() && wanted > 0; t++) {
+				FEStorage source = plan.consumers[t];
+				if (source == null) continue;
+
+				FEStorage sourceBacking = source.getBackingStorage();
+				if (sourceBacking == consumerBacking || used.contains(sourceBacking)) {
+					plan.consumers[t] = null;
 					continue;
 				}
 
-				// Otherwise, treat as a potential consumer endpoint.
-				FEStorage maybe = FEApi.STORAGE.find(world, neighborPos, neighborEnter);
-				if (maybe == null || !maybe.supportsInsertion()) continue;
-
-				int tIdx = neighborEnter.getId();
-				long tPosLong = neighborPos.asLong();
-				Target existing = targets[tIdx].get(tPosLong);
-				Target candidate = new Target(neighborPos, neighborEnter, cur.resistance, cur.capacity);
-				if (existing == null || candidate.resistance < existing.resistance
-						|| (candidate.resistance == existing.resistance && candidate.capacity > existing.capacity)) {
-					targets[tIdx].put(tPosLong, candidate);
+				long pathCap = Math.min(route.capacity[t], plan.inputLimit[t]);
+				// A face that can carry nothing leaves its storage to the storage's other faces.
+				if (pathCap <= 0) continue;
+				used.add(sourceBacking);
+				extracted[t] = transfer(source, consumer, route.resistance[t], pathCap, wanted, plan, t, outer);
+				wanted -= plan.delivered[t];
+				received += plan.delivered[t];
+			}
+
+			if (!simulate) {
+				outer.commit();
+			}
+		}
+		return received;
+	}
+
+	/** Whether no target other than {@code t} serves {@code backing} yet. */
+	private static boolean isFree(Reference2IntOpenHashMap<FEStorage> servedBy, FEStorage backing, int t) {
+		int owner = servedBy.getInt(backing);
+		return owner < 0 || owner == t;
+	}
+
+	/**
+	 * Move up to {@code pathCap} pre-loss FE over target {@code t}'s path, delivering at most {@code inputLeft}.
+	 * Simulates both ends to pick a safe amount, then performs an atomic nested commit.
+	 *
+	 * @return FE extracted from source
+	 */
+	private static long transfer(FEStorage source, FEStorage consumer, int resistance, long pathCap, long inputLeft,
+			Plan plan, int t, Transaction outer) {
+		if (pathCap <= 0 || inputLeft <= 0) return 0;
+
+		long sendMax;
+		plan.transactions++;
+		try (Transaction sim = Transaction.openNested(outer)) {
+			sendMax = source.extract(pathCap, sim);
+		}
+		if (sendMax <= 0) return 0;
+
+		long carry = plan.lossCarry;
+		long deliveredMax = Math.min(FELoss.delivered(sendMax, resistance, carry), inputLeft);
+		if (deliveredMax <= 0) return 0;
+
+		long acceptedMax;
+		plan.transactions++;
+		try (Transaction sim = Transaction.openNested(outer)) {
+			acceptedMax = consumer.insert(deliveredMax, sim);
+		}
+		plan.probed[t] = true;
+		plan.saturated[t] = acceptedMax == deliveredMax;
+		if (acceptedMax <= 0) return 0;
+
+		long send = FELoss.sent(acceptedMax, resistance, carry);
+		send = Math.min(send, pathCap);
+		if (send <= 0) return 0;
+
+		plan.transactions++;
+		try (Transaction step = Transaction.openNested(outer)) {
+			long extracted = source.extract(send, step);
+			if (extracted != send) {
+				return 0;
+			}
+
+			long delivered = FELoss.delivered(extracted, resistance, carry);
+			if (delivered != acceptedMax) {
+				// Something changed between simulation and execution; abort this target.
+				return 0;
+			}
+
+			long inserted = consumer.insert(delivered, step);
+			if (inserted != delivered) {
+				return 0;
+			}
+
+			step.commit();
+			plan.delivered[t] += delivered;
+			plan.lossCarry = FELoss.carry(extracted, resistance, carry);
+			plan.lost += extracted - delivered;
+			return extracted;
+		}
+	}
+
+	private static Route route(FECableNetworkManager.FECableNetwork network, BlockPos startPos,
+			Direction startEnterSide, FECable startCable) {
+		FECableGraph graph = network.graph;
+		int start = graph.indexOf(startPos.asLong());
+		if (start < 0) return Route.EMPTY;
+
+		long key = (long) start * 6 + startEnterSide.getId();
+		Route route = network.routes.get(key);
+		if (route == null) {
+			Route base = network.baseRoutes.get(start);
+			if (base == null) {
+				base = baseRoute(network, start);
+				network.baseRoutes.put(start, base);
+			}
+			route = withEntry(base, FELoss.clampPpm(startCable.getResistancePpm()),
+					Math.max(0L, startCable.getTransferCapacityFE()));
+			network.routes.put(key, route);
+		}
+		return route;
+	}
+
+	/**
+	 * The route from node {@code start}, relative to it. Searched on the contracted graph; kept route trees
+	 * ({@link FECableNetworkManager#setIncrementalRouting(boolean) incremental routing}) live on the full graph, whose
+	 * node identities survive the endpoint changes that rebuild the contracted one.
+	 */
+	private static Route baseRoute(FECableNetworkManager.FECableNetwork network, int start) {
+		FECableNetworkManager manager = network.getManager();
+		if (!manager.isIncrementalRouting()) return RouteSearch.prepare(network, start, false).runNow();
+
+		FEEvents.Route event = new FEEvents.Route();
+		event.begin();
+		FERouteTree tree = manager.routeTree(network, start);
+		Route route = routeOf(network.graph, tree, network::acceptsFace);
+		event.end();
+		if (event.shouldCommit()) {
+			event.networkId = network.id;
+			event.startNode = start;
+			event.nodes = network.graph.nodeCount();
+			event.reached = tree.reached;
+			event.targets = route.size();
+			event.incremental = true;
+			event.commit();
+		}
+		return route;
+	}
+
+	/**
+	 * Extractable faces that can reach node {@code start}, cheapest first. Searched on the reversed graph, so the
+	 * labels are the paths from each source's cable to the start; the cable face a source feeds is added per face.
+	 */
+	private static Route pullRoute(FECableNetworkManager.FECableNetwork network, int start) {
+		Route route = network.pullRoutes.get(start);
+		if (route != null) return route;
+		route = RouteSearch.prepare(network, start, true).runNow();
+		network.pullRoutes.put(start, route);
+		return route;
+	}
+
+	/**
+	 * One search on a network's contracted graph, split so that the search itself can run off the server thread:
+	 * {@link #prepare} resolves every endpoint face the search depends on, after which {@link #run()} reads only the
+	 * graphs and the filled face sets of the network and touches no world state. {@link #finish()} then builds the
+	 * route on the server thread. Not for incremental routing, whose trees are shared across networks.
+	 */
+	static final class RouteSearch {
+		final FECableNetworkManager.FECableNetwork network;
+		final int start;
+		final boolean pull;
+		private final FEContractedGraph contracted;
+		// The graph searched (contracted, or full if start was contracted away) and start's node in it; -1: no route.
+		private final FECableGraph graph;
+		private final int s;
+		private FERouteTree tree;
+		private Route route;
+		private long nanos;
+
+		private RouteSearch(FECableNetworkManager.FECableNetwork network, int start, boolean pull,
+				FEContractedGraph contracted, FECableGraph graph, int s) {
+			this.network = network;
+			this.start = start;
+			this.pull = pull;
+			this.contracted = contracted;
+			this.graph = graph;
+			this.s = s;
+		}
+
+		/** Server thread only. Contracting the graph looks up every endpoint face of the network. */
+		static RouteSearch prepare(FECableNetworkManager.FECableNetwork network, int start, boolean pull) {
+			FEContractedGraph contracted = network.contracted();
+			int s = contracted.graph.indexOf(network.graph.nodePos[start]);
+			if (s >= 0) return new RouteSearch(network, start, pull, contracted, contracted.graph, s);
+			// Start cables of pulls have an endpoint face (the consumer), so they are never contracted away.
+			if (pull) return new RouteSearch(network, start, true, contracted, contracted.graph, -1);
+			return new RouteSearch(network, start, false, null, network.graph, start);
+		}
+
+		/** The search; any thread, at most one search of a network at a time. */
+		void run() {
+			if (s < 0) return;
+			long begin = System.nanoTime();
+			tree = FERouteTree.build(pull ? graph.reversed() : graph, s);
+			if (!pull) route = routeOf(graph, tree, this::accepts);
+			nanos = System.nanoTime() - begin;
+		}
+
+		/** Server thread only, after {@link #run()}. */
+		Route finish() {
+			if (s < 0) return Route.EMPTY;
+			FEEvents.Route event = new FEEvents.Route();
+			event.begin();
+			if (pull) route = pullTargets();
+			event.end();
+			if (event.shouldCommit()) {
+				event.networkId = network.id;
+				event.startNode = start;
+				event.nodes = graph.nodeCount();
+				event.reached = tree.reached;
+				event.targets = route.size();
+				event.pull = pull;
+				event.searchNanos = nanos;
+				event.commit();
+			}
+			return route;
+		}
+
+		Route runNow() {
+			run();
+			return finish();
+		}
+
+		/** Cache the finished route on the network, where {@link #route} and {@link #pullRoute} look first. */
+		void install(Route finished) {
+			if (pull) {
+				network.pullRoutes.put(start, finished);
+			} else {
+				network.baseRoutes.put(start, finished);
+			}
+		}
+
+		private boolean accepts(int f) {
+			return network.acceptsFace(contracted == null ? f : contracted.fullFace[f]);
+		}
+
+		private Route pullTargets() {
+			CableGraphSource lookup = network.getManager().lookup();
+			ArrayList<Target> targets = new ArrayList<>();
+			for (int k = 0; k < tree.reached; k++) {
+				int u = tree.order[k];
+				BlockPos cablePos = BlockPos.fromLong(graph.nodePos[u]);
+				for (int f = graph.faceStart[u]; f < graph.faceStart[u + 1]; f++) {
+					if (!network.extractsFace(contracted.fullFace[f])) continue;
+					Direction side = graph.faceSide(f);
+					FECable entry = lookup.findCable(cablePos, side.getOpposite());
+					if (entry == null) continue;
+					targets.add(new Target(BlockPos.fromLong(graph.facePos[f]), side,
+							FELoss.clampPpm((long) tree.res[u] + FELoss.clampPpm(entry.getResistancePpm())),
+							Math.min(tree.cap[u], Math.max(0L, entry.getTransferCapacityFE()))));
 				}
 			}
+			return sorted(targets);
 		}
+	}
 
-		ArrayList<Target> out = new ArrayList<>();
-		for (int i = 0; i < 6; i++) {
-			out.addAll(targets[i].values());
+	/**
+	 * The endpoint faces reached by {@code tree} and accepted by {@code isEndpoint}, relative to the start node,
+	 * ordered by resistance ascending then capacity descending; ties keep the tree's order.
+	 */
+	static Route routeOf(FECableGraph graph, FERouteTree tree, IntPredicate isEndpoint) {
+		ArrayList<Target> targets = new ArrayList<>();
+		for (int k = 0; k < tree.reached; k++) {
+			int u = tree.order[k];
+			// Each endpoint face belongs to exactly one cable node, so it takes that node's best path.
+			for (int f = graph.faceStart[u]; f < graph.faceStart[u + 1]; f++) {
+				if (!isEndpoint.test(f)) continue;
+				targets.add(new Target(BlockPos.fromLong(graph.facePos[f]), graph.faceSide(f), tree.res[u],
+						tree.cap[u]));
+			}
 		}
-		return out;
+
+		return sorted(targets);
 	}
 
-	private static long applyResistance(long sendPreLoss, int resistancePercent) {
-		int r = clampPercent(resistancePercent);
-		if (sendPreLoss <= 0) return 0;
-		if (r >= 100) return 0;
-		return (sendPreLoss * (100L - r)) / 100L;
+	/** Targets by resistance ascending, then capacity descending; ties keep their order. */
+	private static Route sorted(ArrayList<Target> targets) {
+		if (targets.isEmpty()) return Route.EMPTY;
+		targets.sort(Comparator.comparingInt((Target t) -> t.resistance).thenComparingLong(t -> -t.capacity));
+
+		int size = targets.size();
+		BlockPos[] pos = new BlockPos[size];
+		Direction[] side = new Direction[size];
+		int[] resistance = new int[size];
+		long[] capacity = new long[size];
+		for (int i = 0; i < size; i++) {
+			Target t = targets.get(i);
+			pos[i] = t.pos;
+			side[i] = t.side;
+			resistance[i] = t.resistance;
+			capacity[i] = t.capacity;
+		}
+		return new Route(pos, side, resistance, capacity);
+	}
+
+	/**
+	 * {@code base} as seen from a source whose entry cable face adds {@code r0} and caps at {@code c0}. Adding the
+	 * same resistance and capping every path keeps the order, except that paths reaching full loss tie on resistance;
+	 * that tail is re-sorted by capacity. Positions and sides are shared with {@code base}.
+	 */
+	static Route withEntry(Route base, int r0, long c0) {
+		if (r0 == 0 && c0 == Long.MAX_VALUE) return base;
+		int size = base.size();
+		int[] resistance = new int[size];
+		long[] capacity = new long[size];
+		int fullLoss = size;
+		for (int i = 0; i < size; i++) {
+			resistance[i] = FELoss.clampPpm((long) r0 + base.resistance[i]);
+			capacity[i] = Math.min(c0, base.capacity[i]);
+			if (resistance[i] == FELoss.PPM && fullLoss == size) fullLoss = i;
+		}
+		if (size - fullLoss < 2) return new Route(base.pos, base.side, resistance, capacity);
+
+		BlockPos[] pos = base.pos.clone();
+		Direction[] side = base.side.clone();
+		Integer[] tail = new Integer[size - fullLoss];
+		for (int i = 0; i < tail.length; i++) {
+			tail[i] = fullLoss + i;
+		}
+		Arrays.sort(tail, Comparator.comparingLong((Integer i) -> -capacity[i]));
+		long[] sortedCap = capacity.clone();
+		for (int i = 0; i < tail.length; i++) {
+			pos[fullLoss + i] = base.pos[tail[i]];
+			side[fullLoss + i] = base.side[tail[i]];
+			sortedCap[fullLoss + i] = capacity[tail[i]];
+		}
+		return new Route(pos, side, resistance, sortedCap);
 	}
 
-	private static long inverseResistanceCeil(long delivered, int resistancePercent) {
-		int r = clampPercent(resistancePercent);
-		if (delivered <= 0) return 0;
-		if (r >= 100) return Long.MAX_VALUE;
-		long denom = 100L - r;
-		return (delivered * 100L + (denom - 1)) / denom;
+	private static final class Target {
+		final BlockPos pos;
+		final Direction side;
+		final int resistance;
+		final long capacity;
+
+		Target(BlockPos pos, Direction side, int resistance, long capacity) {
+			this.pos = pos;
+			this.side = side;
+			this.resistance = resistance;
+			this.capacity = capacity;
+		}
 	}
 
-	private static int clampPercent(int v) {
-		if (v < 0) return 0;
-		if (v > 100) return 100;
-		return v;
+	/** {@code a * b / c} for {@code 0 <= a, b <= c}, without intermediate overflow. */
+	static long mulDiv(long a, long b, long c) {
+		if (Math.multiplyHigh(a, b) == 0 && a * b >= 0) return a * b / c;
+		return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).divide(BigInteger.valueOf(c)).longValue();
 	}
 
+	private static long satAdd(long a, long b) {
+		long r = a + b;
+		return r < 0 ? Long.MAX_VALUE : r;
+	}
 }
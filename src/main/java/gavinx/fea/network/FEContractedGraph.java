@@ -0,0 +1,99 @@
+package gavinx.fea.network;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A {@link FECableGraph} with its linear runs contracted, for route searches.
+ *
+ * <p>A cable is contracted away when it has no endpoint face and exactly two neighbours, with one edge to and one
+ * edge from each. Every maximal run of such cables becomes a single edge per direction between the cables at its
+ * ends, carrying the summed resistance (clamped to full loss) and the minimum capacity of the edges it replaces.
+ * Paths between the remaining cables keep their resistance and capacity, so searches on the contracted graph give
+ * the same labels while a long transmission line costs one heap operation instead of one per block.
+ *
+ * <p>Only faces that are endpoints are kept; {@link #fullFace} maps them back to the full graph. Which faces are
+ * endpoints depends on loaded storages, so networks drop their contracted graph together with their routes.
+ */
+final class FEContractedGraph {
+	final FECableGraph graph;
+	/** Face index in the full graph of each face of {@link #graph}. */
+	final int[] fullFace;
+
+	private FEContractedGraph(FECableGraph graph, int[] fullFace) {
+		this.graph = graph;
+		this.fullFace = fullFace;
+	}
+
+	static FEContractedGraph contract(FECableGraph full, IntPredicate isEndpoint) {
+		int n = full.nodeCount();
+		boolean[] interior = new boolean[n];
+		int[] inStart = full.inStart();
+		int[] inEdges = full.inEdges();
+		int[] edgeFrom = full.edgeFrom();
+		for (int v = 0; v < n; v++) {
+			interior[v] = isLink(full, inStart, inEdges, edgeFrom, v) && !hasEndpoint(full, v, isEndpoint);
+		}
+
+		FECableGraph.Builder builder = new FECableGraph.Builder();
+		int faces = 0;
+		int[] fullFace = new int[full.faceCount()];
+		for (int u = 0; u < n; u++) {
+			if (interior[u]) continue;
+			int node = builder.node(full.nodePos[u]);
+			for (int f = full.faceStart[u]; f < full.faceStart[u + 1]; f++) {
+				if (!isEndpoint.test(f)) continue;
+				builder.face(node, full.facePos[f], full.faceSide(f));
+				// Faces are added in node order, which build() keeps.
+				fullFace[faces++] = f;
+			}
+		}
+
+		for (int u = 0; u < n; u++) {
+			if (interior[u]) continue;
+			int from = builder.node(full.nodePos[u]);
+			for (int e = full.edgeStart[u]; e < full.edgeStart[u + 1]; e++) {
+				int prev = u;
+				int cur = full.edgeTo[e];
+				long res = full.edgeRes[e];
+				long cap = full.edgeCap[e];
+				while (interior[cur]) {
+					int next = other(full, cur, prev);
+					res = Math.min(res + full.edgeRes[next], FELoss.PPM);
+					cap = Math.min(cap, full.edgeCap[next]);
+					prev = cur;
+					cur = full.edgeTo[next];
+				}
+				// A loop back to where it started never improves a path.
+				if (cur == u) continue;
+				builder.edge(from, builder.node(full.nodePos[cur]), (int) res, cap);
+			}
+		}
+		return new FEContractedGraph(builder.build(), Arrays.copyOf(fullFace, faces));
+	}
+
+	/** Whether {@code v} has exactly two neighbours, with one edge to and one edge from each. */
+	private static boolean isLink(FECableGraph full, int[] inStart, int[] inEdges, int[] edgeFrom, int v) {
+		int out = full.edgeStart[v];
+		if (full.edgeStart[v + 1] - out != 2 || inStart[v + 1] - inStart[v] != 2) return false;
+		int a = full.edgeTo[out];
+		int b = full.edgeTo[out + 1];
+		if (a == b || a == v || b == v) return false;
+		int x = edgeFrom[inEdges[inStart[v]]];
+		int y = edgeFrom[inEdges[inStart[v] + 1]];
+		return (x == a && y == b) || (x == b && y == a);
+	}
+
+	private static boolean hasEndpoint(FECableGraph full, int v, IntPredicate isEndpoint) {
+		for (int f = full.faceStart[v]; f < full.faceStart[v + 1]; f++) {
+			if (isEndpoint.test(f)) return true;
+		}
+		return false;
+	}
+
+	/** The out-edge of link node {@code v} that does not lead back to {@code prev}. */
+	private static int other(FECableGraph full, int v, int prev) {
+		int e = full.edgeStart[v];
+		return full.edgeTo[e] == prev ? e + 1 : e;
+	}
+}
@@ -0,0 +1,151 @@
+package gavinx.fea.network;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the cable network engine, under the "Fabric Energy API" category.
+ *
+ * <p>Callers create an event, {@code begin()} it, and only fill in fields and commit when {@code shouldCommit()}:
+ * while no recording enables them, that check is all the event costs. Stack traces are off by default; enable them
+ * per event in the recording settings to see the calling mod.
+ */
+final class FEEvents {
+	private static final String CATEGORY = "Fabric Energy API";
+
+	private FEEvents() {}
+
+	@Name("gavinx.fea.NetworkBuild")
+	@Label("FE Network Build")
+	@Description("Breadth-first discovery of a cable network; budgeted rebuilds emit one event per tick slice")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class Build extends Event {
+		@Label("Network Id")
+		@Description("Id of the network built, 0 while a budgeted build is unfinished")
+		int networkId;
+
+		@Label("Start Position")
+		long startPos;
+
+		@Label("Nodes Expanded")
+		int nodesExpanded;
+
+		@Label("Cables")
+		int cables;
+
+		@Label("Budgeted")
+		boolean budgeted;
+	}
+
+	@Name("gavinx.fea.NetworkInvalidate")
+	@Label("FE Network Invalidate")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class Invalidate extends Event {
+		@Label("Network Id")
+		int networkId;
+
+		@Label("Cables")
+		int cables;
+
+		@Label("Deferred")
+		@Description("Marked stale for a budgeted rebuild instead of dropped")
+		boolean deferred;
+	}
+
+	@Name("gavinx.fea.RouteSearch")
+	@Label("FE Route Search")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class Route extends Event {
+		@Label("Network Id")
+		int networkId;
+
+		@Label("Start Node")
+		int startNode;
+
+		@Label("Nodes")
+		@Description("Nodes of the graph searched, after contraction")
+		int nodes;
+
+		@Label("Nodes Reached")
+		int reached;
+
+		@Label("Targets")
+		int targets;
+
+		@Label("Pull")
+		boolean pull;
+
+		@Label("Incremental")
+		boolean incremental;
+
+		@Label("Search Time")
+		@Description("Nanoseconds spent in the graph search, which may have run on a worker thread before this event")
+		@Timespan(Timespan.NANOSECONDS)
+		long searchNanos;
+	}
+
+	@Name("gavinx.fea.Transfer")
+	@Label("FE Transfer")
+	@Description("One distributeFrom or pullInto call, or the drain of one source's buffered FE")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class Transfer extends Event {
+		@Label("Network Id")
+		int networkId;
+
+		@Label("Position")
+		@Description("Source position of a distribution, consumer position of a pull")
+		long pos;
+
+		@Label("Pull")
+		boolean pull;
+
+		@Label("Simulate")
+		boolean simulate;
+
+		@Label("Buffered")
+		@Description("Moved into a network buffer, or drained from one")
+		boolean buffered;
+
+		@Label("Targets")
+		int targets;
+
+		@Label("Transactions")
+		@Description("Nested transactions opened")
+		int transactions;
+
+		@Label("Requested")
+		long requestedFE;
+
+		@Label("Moved")
+		@Description("FE extracted from the source (or buffer) of a distribution, inserted into the consumer of a pull")
+		long movedFE;
+
+		@Label("Lost")
+		long lostFE;
+	}
+
+	@Name("gavinx.fea.NetworkStats")
+	@Label("FE Network Stats")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static final class Stats extends Event {
+		@Label("Network Id")
+		int networkId;
+
+		@Label("Scanned")
+		@Description("Endpoint totals were (re)built by a scan of every endpoint face")
+		boolean scanned;
+
+		@Label("Faces")
+		int faces;
+	}
+}
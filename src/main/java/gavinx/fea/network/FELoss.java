@@ -0,0 +1,58 @@
+package gavinx.fea.network;
+
+/**
+ * Exact resistance loss in parts per million.
+ *
+ * <p>A transfer sending {@code sent} FE across {@code r} ppm delivers {@code floor(sent * (PPM - r) / PPM)}. The
+ * product needs up to 83 bits, so it is split as {@code sent = hi * PPM + lo}: {@code hi * keep} is exact and at most
+ * {@code sent}, and {@code lo * keep} stays below {@code 2^40}. No input overflows.
+ *
+ * <p>The discarded fraction of a transfer can be kept as a {@code carry} in {@code 0..PPM-1} millionths of an FE and
+ * handed to the next transfer, so a run of transfers rounds once overall instead of once per transfer.
+ */
+final class FELoss {
+	static final int PPM = 1_000_000;
+
+	private FELoss() {}
+
+	static int clampPpm(long ppm) {
+		if (ppm < 0) return 0;
+		if (ppm > PPM) return PPM;
+		return (int) ppm;
+	}
+
+	/** FE delivered when sending {@code sent} FE across {@code resistancePpm}: {@code floor((sent * keep + carry) / PPM)}. */
+	static long delivered(long sent, int resistancePpm, long carry) {
+		if (sent <= 0) return 0;
+		long keep = PPM - clampPpm(resistancePpm);
+		return sent / PPM * keep + (sent % PPM * keep + carry) / PPM;
+	}
+
+	/** The carry left over after {@link #delivered(long, int, long)}: {@code (sent * keep + carry) mod PPM}. */
+	static long carry(long sent, int resistancePpm, long carry) {
+		if (sent <= 0) return carry;
+		long keep = PPM - clampPpm(resistancePpm);
+		return (sent % PPM * keep + carry) % PPM;
+	}
+
+	/**
+	 * Smallest {@code sent} with {@code delivered(sent, resistancePpm, carry) >= delivered}, or {@link Long#MAX_VALUE}
+	 * if no representable amount delivers that much.
+	 *
+	 * <p>Delivery grows by at most 1 FE per FE sent, so the result delivers exactly {@code delivered}.
+	 */
+	static long sent(long delivered, int resistancePpm, long carry) {
+		if (delivered <= 0) return 0;
+		long keep = PPM - clampPpm(resistancePpm);
+		if (keep == 0) return Long.MAX_VALUE;
+
+		// ceil((delivered * PPM - carry) / keep) with delivered = a * keep + b.
+		long a = delivered / keep;
+		long b = delivered % keep;
+		if (Math.multiplyHigh(a, PPM) != 0 || a * PPM < 0) return Long.MAX_VALUE;
+		long rest = b * PPM - carry;
+		long restCeil = rest >= 0 ? (rest + keep - 1) / keep : -(-rest / keep);
+		long sent = a * PPM + restCeil;
+		return sent < 0 ? Long.MAX_VALUE : sent;
+	}
+}
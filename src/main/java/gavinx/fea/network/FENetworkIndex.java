@@ -0,0 +1,325 @@
+package gavinx.fea.network;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+/**
+ * Position to network id map of a {@link FECableNetworkManager}, stored per chunk section.
+ *
+ * <p>A section with few cables keeps them as sorted 12-bit local indices next to their ids (6 bytes per cable). Past
+ * {@link #SPARSE_MAX} cables it switches to a palette of the network ids in it plus one byte per block (a short once
+ * the palette outgrows a byte), like Minecraft's block palettes: a full section of one network costs about 4 KiB
+ * instead of the ~100 KiB of a hash map entry per cable. Sections live in per-chunk columns, so everything in a chunk
+ * can be found and removed together, and a section or column is freed as soon as it is empty.
+ *
+ * <p>Id 0 means no network.
+ */
+final class FENetworkIndex {
+	/** Cables a section keeps in sorted arrays before switching to a palette. */
+	static final int SPARSE_MAX = 512;
+
+	private final Long2ObjectOpenHashMap<Column> columns = new Long2ObjectOpenHashMap<>();
+	private int size;
+	// Consecutive lookups mostly hit the same chunk, e.g. along a cable line, and often the same section.
+	private long lastChunk;
+	private Column lastColumn;
+	private long lastSectionPos;
+	private Section lastSection;
+
+	/** Positions mapped. */
+	int size() {
+		return size;
+	}
+
+	/** Chunks with at least one position mapped. */
+	int chunkCount() {
+		return columns.size();
+	}
+
+	int get(long pos) {
+		long sectionPos = ChunkSectionPos.fromBlockPos(pos);
+		Section section = lastSection;
+		if (section == null || lastSectionPos != sectionPos) {
+			Column column = column(chunkOf(pos), false);
+			if (column == null) return 0;
+			section = column.section(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(pos)));
+			if (section == null) return 0;
+			lastSectionPos = sectionPos;
+			lastSection = section;
+		}
+		return section.get(localIndex(pos));
+	}
+
+	void put(long pos, int id) {
+		if (id == 0) {
+			remove(pos);
+			return;
+		}
+		Column column = column(chunkOf(pos), true);
+		if (column.getOrCreate(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(pos))).put(localIndex(pos), id)) {
+			size++;
+		}
+	}
+
+	void remove(long pos) {
+		remove(pos, 0);
+	}
+
+	/** Remove {@code pos} if it maps to {@code id}, or whatever it maps to for id 0. */
+	void remove(long pos, int id) {
+		long chunk = chunkOf(pos);
+		Column column = column(chunk, false);
+		if (column == null) return;
+		int sectionY = ChunkSectionPos.getSectionCoord(BlockPos.unpackLongY(pos));
+		Section section = column.section(sectionY);
+		if (section == null || !section.remove(localIndex(pos), id)) return;
+		size--;
+		if (section.size != 0) return;
+		if (lastSection == section) lastSection = null;
+		if (column.clear(sectionY)) removeColumn(chunk);
+	}
+
+	/** Ids of the networks with a position in {@code chunkPos}. */
+	int[] idsIn(ChunkPos chunkPos) {
+		Column column = columns.get(chunkPos.toLong());
+		if (column == null) return new int[0];
+		IntOpenHashSet ids = new IntOpenHashSet();
+		for (Section section : column.sections) {
+			if (section != null) section.collectIds(ids);
+		}
+		return ids.toIntArray();
+	}
+
+	/** Forget every position in {@code chunkPos}. */
+	void removeChunk(ChunkPos chunkPos) {
+		long chunk = chunkPos.toLong();
+		Column column = columns.get(chunk);
+		if (column == null) return;
+		for (Section section : column.sections) {
+			if (section != null) size -= section.size;
+		}
+		lastSection = null;
+		removeColumn(chunk);
+	}
+
+	private void removeColumn(long chunk) {
+		columns.remove(chunk);
+		if (lastColumn != null && lastChunk == chunk) lastColumn = null;
+	}
+
+	private Column column(long chunk, boolean create) {
+		if (lastColumn != null && lastChunk == chunk) return lastColumn;
+		Column column = columns.get(chunk);
+		if (column == null) {
+			if (!create) return null;
+			column = new Column();
+			columns.put(chunk, column);
+		}
+		lastChunk = chunk;
+		lastColumn = column;
+		return column;
+	}
+
+	private static long chunkOf(long pos) {
+		return ChunkPos.toLong(ChunkSectionPos.getSectionCoord(BlockPos.unpackLongX(pos)),
+				ChunkSectionPos.getSectionCoord(BlockPos.unpackLongZ(pos)));
+	}
+
+	/** Index of {@code pos} within its section: yzx, 4 bits each. */
+	private static int localIndex(long pos) {
+		return (BlockPos.unpackLongY(pos) & 15) << 8 | (BlockPos.unpackLongZ(pos) & 15) << 4
+				| BlockPos.unpackLongX(pos) & 15;
+	}
+
+	/** The sections of one chunk, by section y from {@link #bottom}. */
+	private static final class Column {
+		int bottom;
+		Section[] sections = new Section[0];
+		private int live;
+
+		Section section(int sectionY) {
+			int i = sectionY - bottom;
+			return i >= 0 && i < sections.length ? sections[i] : null;
+		}
+
+		Section getOrCreate(int sectionY) {
+			if (sections.length == 0) {
+				bottom = sectionY;
+				sections = new Section[1];
+			} else if (sectionY < bottom) {
+				Section[] grown = new Section[sections.length + bottom - sectionY];
+				System.arraycopy(sections, 0, grown, bottom - sectionY, sections.length);
+				sections = grown;
+				bottom = sectionY;
+			} else if (sectionY - bottom >= sections.length) {
+				sections = Arrays.copyOf(sections, sectionY - bottom + 1);
+			}
+			Section section = sections[sectionY - bottom];
+			if (section == null) {
+				section = new Section();
+				sections[sectionY - bottom] = section;
+				live++;
+			}
+			return section;
+		}
+
+		/** Drop an emptied section; returns whether the column is empty now. */
+		boolean clear(int sectionY) {
+			sections[sectionY - bottom] = null;
+			return --live == 0;
+		}
+	}
+
+	/** Network ids of the positions of one chunk section, sparse or paletted. */
+	private static final class Section {
+		int size;
+
+		// Sparse: sorted local indices and their ids; null once paletted.
+		private short[] keys = new short[4];
+		private int[] values = new int[4];
+
+		// Paletted: per block, 1 + the palette slot of its id, or 0. Slots whose id has no blocks left are reused.
+		private int[] palette;
+		private int[] uses;
+		private byte[] bytes;
+		private short[] shorts;
+
+		int get(int local) {
+			if (keys != null) {
+				int i = Arrays.binarySearch(keys, 0, size, (short) local);
+				return i >= 0 ? values[i] : 0;
+			}
+			int slot = slotAt(local);
+			return slot == 0 ? 0 : palette[slot - 1];
+		}
+
+		/** Returns whether {@code local} was not mapped before. */
+		boolean put(int local, int id) {
+			if (keys != null) {
+				int i = Arrays.binarySearch(keys, 0, size, (short) local);
+				if (i >= 0) {
+					values[i] = id;
+					return false;
+				}
+				if (size < SPARSE_MAX) {
+					insert(-i - 1, local, id);
+					return true;
+				}
+				toPalette();
+			}
+			int old = slotAt(local);
+			if (old != 0 && palette[old - 1] == id) return false;
+			int slot = slotOf(id);
+			uses[slot - 1]++;
+			if (old != 0) release(old);
+			setSlot(local, slot);
+			if (old != 0) return false;
+			size++;
+			return true;
+		}
+
+		/** Remove {@code local} if it maps to {@code id} (any id for 0); returns whether it was removed. */
+		boolean remove(int local, int id) {
+			if (keys != null) {
+				int i = Arrays.binarySearch(keys, 0, size, (short) local);
+				if (i < 0 || (id != 0 && values[i] != id)) return false;
+				System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+				System.arraycopy(values, i + 1, values, i, size - i - 1);
+				size--;
+				return true;
+			}
+			int slot = slotAt(local);
+			if (slot == 0 || (id != 0 && palette[slot - 1] != id)) return false;
+			release(slot);
+			setSlot(local, 0);
+			size--;
+			return true;
+		}
+
+		void collectIds(IntOpenHashSet ids) {
+			if (keys != null) {
+				for (int i = 0; i < size; i++) {
+					ids.add(values[i]);
+				}
+				return;
+			}
+			for (int i = 0; i < palette.length; i++) {
+				if (uses[i] > 0) ids.add(palette[i]);
+			}
+		}
+
+		private void insert(int i, int local, int id) {
+			if (size == keys.length) {
+				int capacity = Math.min(SPARSE_MAX, size * 2);
+				keys = Arrays.copyOf(keys, capacity);
+				values = Arrays.copyOf(values, capacity);
+			}
+			System.arraycopy(keys, i, keys, i + 1, size - i);
+			System.arraycopy(values, i, values, i + 1, size - i);
+			keys[i] = (short) local;
+			values[i] = id;
+			size++;
+		}
+
+		private void toPalette() {
+			palette = new int[4];
+			uses = new int[4];
+			bytes = new byte[16 * 16 * 16];
+			for (int i = 0; i < size; i++) {
+				int slot = slotOf(values[i]);
+				uses[slot - 1]++;
+				setSlot(keys[i], slot);
+			}
+			keys = null;
+			values = null;
+		}
+
+		private int slotAt(int local) {
+			return bytes != null ? bytes[local] & 0xFF : shorts[local];
+		}
+
+		private void setSlot(int local, int slot) {
+			if (bytes != null) {
+				bytes[local] = (byte) slot;
+			} else {
+				shorts[local] = (short) slot;
+			}
+		}
+
+		/** 1 + the palette slot of {@code id}, taking a free slot if it has none. */
+		private int slotOf(int id) {
+			int free = -1;
+			for (int i = 0; i < palette.length; i++) {
+				if (uses[i] == 0) {
+					if (free < 0) free = i;
+				} else if (palette[i] == id) {
+					return i + 1;
+				}
+			}
+			if (free < 0) {
+				free = palette.length;
+				palette = Arrays.copyOf(palette, free * 2);
+				uses = Arrays.copyOf(uses, free * 2);
+			}
+			if (free >= 255 && bytes != null) {
+				shorts = new short[bytes.length];
+				for (int i = 0; i < bytes.length; i++) {
+					shorts[i] = (short) (bytes[i] & 0xFF);
+				}
+				bytes = null;
+			}
+			palette[free] = id;
+			return free + 1;
+		}
+
+		private void release(int slot) {
+			uses[slot - 1]--;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package gavinx.fea.network;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * Drives registered sources and sinks of one {@link FECableNetworkManager} from the world tick, instead of every
+ * machine calling {@link FECableTransfer#distributeFrom} or {@link FECableTransfer#pullInto} from its own ticker.
+ *
+ * <p>A machine registers a source or sink side once (and again only to change its rate); each {@link #tick()} then
+ * distributes up to that rate from every source and pulls up to that rate into every sink. Consumers fed by pushes
+ * need no registration: routes find them. Sides are processed network by network: networks in id order, within a
+ * network sources before sinks, each in registration order, so a network's cached routes and endpoint state are used
+ * back to back and the order does not depend on block entity tick order. Sides not next to a network come last.
+ *
+ * <p>The grouping is cached and only recomputed when registrations or the manager's networks change. Registrations
+ * are kept in memory only; the owning mod re-registers its sides after load. Opt-in: see
+ * {@link FECableNetworkManager#getScheduler()}.
+ */
+public final class FENetworkScheduler {
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final int SOURCE = 0;
+	private static final int SINK = 1;
+
+	private final FECableNetworkManager manager;
+
+	// Registered sides in registration order. Unregistered slots keep side -1 until the next regroup, so that
+	// unregistering from within a tick is safe.
+	private long[] pos = new long[16];
+	private byte[] side = new byte[16];
+	private byte[] kind = new byte[16];
+	private long[] rate = new long[16];
+	private int count;
+	private final int[] live = new int[2];
+	// per kind and side (kind * 6 + side): pos -> slot
+	private final Long2IntOpenHashMap[] slots = new Long2IntOpenHashMap[12];
+
+	// Slots in processing order; valid while not dirty and the manager's topology did not change.
+	private int[] order = new int[0];
+	private boolean dirty;
+	private int topologyEpoch;
+	private long movedLastTick;
+	private long pulledLastTick;
+
+	FENetworkScheduler(FECableNetworkManager manager) {
+		this.manager = manager;
+		for (int i = 0; i < 12; i++) {
+			slots[i] = new Long2IntOpenHashMap();
+			slots[i].defaultReturnValue(-1);
+		}
+	}
+
+	/**
+	 * Distribute up to {@code maxPerTickFE} from the storage at {@code pos}/{@code side} every tick. Registering an
+	 * already registered source side replaces its rate.
+	 *
+	 * @return false if the source side was already registered
+	 */
+	public boolean registerSource(BlockPos pos, Direction side, long maxPerTickFE) {
+		return register(SOURCE, pos, side, maxPerTickFE);
+	}
+
+	/**
+	 * Pull up to {@code maxPerTickFE} (post-loss) into the storage at {@code pos}/{@code side} every tick, see
+	 * {@link FECableTransfer#pullInto}. Registering an already registered sink side replaces its rate.
+	 *
+	 * @return false if the sink side was already registered
+	 */
+	public boolean registerSink(BlockPos pos, Direction side, long maxPerTickFE) {
+		return register(SINK, pos, side, maxPerTickFE);
+	}
+
+	/** @return false if the source side was not registered */
+	public boolean unregisterSource(BlockPos pos, Direction side) {
+		return unregister(SOURCE, pos, side);
+	}
+
+	/** @return false if the sink side was not registered */
+	public boolean unregisterSink(BlockPos pos, Direction side) {
+		return unregister(SINK, pos, side);
+	}
+
+	/** Unregister every source and sink side of the block at {@code pos}, e.g. when it is broken. */
+	public void unregisterAll(BlockPos pos) {
+		for (Direction dir : DIRECTIONS) {
+			unregister(SOURCE, pos, dir);
+			unregister(SINK, pos, dir);
+		}
+	}
+
+	public boolean isSource(BlockPos pos, Direction side) {
+		return slots[SOURCE * 6 + side.getId()].containsKey(pos.asLong());
+	}
+
+	public boolean isSink(BlockPos pos, Direction side) {
+		return slots[SINK * 6 + side.getId()].containsKey(pos.asLong());
+	}
+
+	public int getSourceCount() {
+		return live[SOURCE];
+	}
+
+	public int getSinkCount() {
+		return live[SINK];
+	}
+
+	private boolean register(int k, BlockPos pos, Direction side, long maxPerTickFE) {
+		long p = pos.asLong();
+		long r = Math.max(0L, maxPerTickFE);
+		Long2IntOpenHashMap bySide = slots[k * 6 + side.getId()];
+		int slot = bySide.get(p);
+		if (slot >= 0) {
+			rate[slot] = r;
+			return false;
+		}
+		if (count == this.pos.length) {
+			this.pos = Arrays.copyOf(this.pos, count * 2);
+			this.side = Arrays.copyOf(this.side, count * 2);
+			kind = Arrays.copyOf(kind, count * 2);
+			rate = Arrays.copyOf(rate, count * 2);
+		}
+		this.pos[count] = p;
+		this.side[count] = (byte) side.getId();
+		kind[count] = (byte) k;
+		rate[count] = r;
+		bySide.put(p, count);
+		count++;
+		live[k]++;
+		dirty = true;
+		return true;
+	}
+
+	private boolean unregister(int k, BlockPos pos, Direction side) {
+		int slot = slots[k * 6 + side.getId()].remove(pos.asLong());
+		if (slot < 0) return false;
+		this.side[slot] = -1;
+		live[k]--;
+		dirty = true;
+		return true;
+	}
+
+	/** FE extracted from all sources (pre-loss) in the last {@link #tick()}. */
+	public long getMovedLastTickFE() {
+		return movedLastTick;
+	}
+
+	/** FE inserted into all sinks (post-loss) in the last {@link #tick()}. */
+	public long getPulledLastTickFE() {
+		return pulledLastTick;
+	}
+
+	/** Distribute from every source and pull into every sink once. Called at the end of each world tick. */
+	public void tick() {
+		movedLastTick = 0;
+		pulledLastTick = 0;
+		if (count == 0) return;
+		if (dirty || topologyEpoch != manager.topologyEpoch()) regroup();
+
+		long moved = 0;
+		long pulled = 0;
+		for (int slot : order) {
+			if (side[slot] < 0) continue;
+			BlockPos p = BlockPos.fromLong(pos[slot]);
+			if (kind[slot] == SOURCE) {
+				moved += FECableTransfer.distributeFrom(manager, p, DIRECTIONS[side[slot]], rate[slot], false);
+			} else {
+				pulled += FECableTransfer.pullInto(manager, p, DIRECTIONS[side[slot]], rate[slot], false);
+			}
+		}
+		movedLastTick = moved;
+		pulledLastTick = pulled;
+	}
+
+	/** Add the route searches of the registered sides, in processing order; see {@link FEParallelRouting}. */
+	void collectRouteSearches(LongOpenHashSet seen, ArrayList<FECableTransfer.RouteSearch> out) {
+		if (count == 0) return;
+		if (dirty || topologyEpoch != manager.topologyEpoch()) regroup();
+		for (int slot : order) {
+			if (side[slot] < 0) continue;
+			manager.addRouteSearch(BlockPos.offset(pos[slot], DIRECTIONS[side[slot]]), kind[slot] == SINK, seen, out);
+		}
+	}
+
+	/** Drop unregistered slots and sort the rest by network id, then sources before sinks, then registration order. */
+	private void regroup() {
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			if (side[i] < 0) continue;
+			if (n != i) {
+				pos[n] = pos[i];
+				side[n] = side[i];
+				kind[n] = kind[i];
+				rate[n] = rate[i];
+				slots[kind[n] * 6 + side[n]].put(pos[n], n);
+			}
+			n++;
+		}
+		count = n;
+
+		// (network id, kind, slot) packed into one long; slots are below 2^31.
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			BlockPos cablePos = BlockPos.fromLong(BlockPos.offset(pos[i], DIRECTIONS[side[i]]));
+			FECableNetworkManager.FECableNetwork network = manager.getNetworkContaining(cablePos);
+			long id = network == null ? Integer.MAX_VALUE : network.id;
+			keys[i] = id << 32 | (long) kind[i] << 31 | i;
+		}
+		Arrays.sort(keys);
+		order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+		}
+
+		dirty = false;
+		// Read after the lookups above, which may have built networks.
+		topologyEpoch = manager.topologyEpoch();
+	}
+}
@@ -0,0 +1,89 @@
+package gavinx.fea.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Searches the routes several managers are about to need concurrently, one task per manager, and caches them.
+ *
+ * <p>Three phases, only the middle one off the server thread: every manager prepares its searches (resolving the
+ * endpoint faces they depend on, discovering networks if needed), the searches run on the pool, and once all of them
+ * are done the routes are built and cached in manager order. The server thread waits for the pool, so nothing else
+ * touches the networks while it runs. A search reads only its network's graphs and face sets and is deterministic,
+ * so the cached routes are exactly the ones a transfer would have searched itself; only when they are computed
+ * changes. See {@link FECableNetworks#setRouteThreads(int)}.
+ */
+final class FEParallelRouting {
+	private FEParallelRouting() {}
+
+	/**
+	 * Search and cache the routes the next ticks of {@code managers} will need, on {@code pool} or, if it is null,
+	 * on the calling thread.
+	 *
+	 * @return the number of routes searched
+	 */
+	static int prefetch(List<FECableNetworkManager> managers, ExecutorService pool) {
+		ArrayList<ArrayList<FECableTransfer.RouteSearch>> batches = new ArrayList<>();
+		int searches = 0;
+		for (FECableNetworkManager manager : managers) {
+			ArrayList<FECableTransfer.RouteSearch> batch = new ArrayList<>();
+			manager.collectRouteSearches(batch);
+			if (batch.isEmpty()) continue;
+			batches.add(batch);
+			searches += batch.size();
+		}
+		if (searches == 0) return 0;
+
+		if (pool == null || batches.size() == 1) {
+			for (ArrayList<FECableTransfer.RouteSearch> batch : batches) {
+				runAll(batch);
+			}
+		} else {
+			ArrayList<Future<?>> tasks = new ArrayList<>(batches.size());
+			for (ArrayList<FECableTransfer.RouteSearch> batch : batches) {
+				tasks.add(pool.submit(() -> runAll(batch)));
+			}
+			await(tasks);
+		}
+
+		for (ArrayList<FECableTransfer.RouteSearch> batch : batches) {
+			for (FECableTransfer.RouteSearch search : batch) {
+				search.install(search.finish());
+			}
+		}
+		return searches;
+	}
+
+	private static void runAll(ArrayList<FECableTransfer.RouteSearch> batch) {
+		for (FECableTransfer.RouteSearch search : batch) {
+			search.run();
+		}
+	}
+
+	/** Wait for every task, even when interrupted, and rethrow the first failure once none is running. */
+	private static void await(ArrayList<Future<?>> tasks) {
+		RuntimeException failure = null;
+		boolean interrupted = false;
+		for (Future<?> task : tasks) {
+			while (true) {
+				try {
+					task.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause() instanceof RuntimeException r ? r
+								: new IllegalStateException("route search failed", e.getCause());
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		if (failure != null) throw failure;
+	}
+}
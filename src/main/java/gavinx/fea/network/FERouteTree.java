@@ -0,0 +1,291 @@
+package gavinx.fea.network;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Shortest-path tree of one route start on a {@link FECableGraph}: per node the best (resistance, capacity) label and
+ * the edge it was reached over. Paths are ordered by resistance ascending, then capacity descending.
+ *
+ * <p>Labels are relative to the start node (resistance 0, unlimited capacity), so one tree serves every face a
+ * source may enter that node through; see {@link FECableTransfer#withEntry}.
+ *
+ * <p>Networks keep these trees when {@link FECableNetworkManager#setIncrementalRouting(boolean) incremental routing}
+ * is enabled, and repair them after a topology change instead of searching again (Ramalingam–Reps):
+ * - nodes whose tree path lost a node or now crosses a worse edge are cut off together with their subtree
+ * - cut-off and new nodes are re-seeded from their intact in-neighbours
+ * - new and improved edges are relaxed from their intact source
+ * - a Dijkstra run from those seeds only settles nodes whose label changes
+ */
+final class FERouteTree {
+	static final int UNREACHED = Integer.MAX_VALUE;
+
+	final int start;
+	final int[] res;
+	final long[] cap;
+	private final int[] parent;
+	private final int[] parentEdge;
+	// reached nodes, parents before children: order[0 .. reached)
+	int[] order;
+	int reached;
+
+	private FERouteTree(int n, int start) {
+		this.start = start;
+		this.res = new int[n];
+		this.cap = new long[n];
+		this.parent = new int[n];
+		this.parentEdge = new int[n];
+		Arrays.fill(res, UNREACHED);
+		Arrays.fill(parent, -1);
+		Arrays.fill(parentEdge, -1);
+		label(start, 0, Long.MAX_VALUE, -1, -1);
+	}
+
+	/**
+	 * Full Dijkstra from {@code start}.
+	 *
+	 * <p>Per-node labels suffice: resistance adds the same amount to every path extended over an edge, so a label
+	 * that loses on resistance at a node can never win at a target reached through it.
+	 */
+	static FERouteTree build(FECableGraph graph, int start) {
+		FERouteTree tree = new FERouteTree(graph.nodeCount(), start);
+		NodeHeap heap = new NodeHeap();
+		heap.push(start, 0, Long.MAX_VALUE);
+		tree.order = new int[graph.nodeCount()];
+		tree.reached = tree.settle(graph, heap, tree.order);
+		return tree;
+	}
+
+	/**
+	 * This tree repaired for {@code now}, given the {@link #delta(FECableGraph, FECableGraph) delta} from the graph it
+	 * was built on.
+	 */
+	FERouteTree migrate(Delta delta, FECableGraph now, int newStart) {
+		if (delta.toNew[start] != newStart) return build(now, newStart);
+
+		int n = now.nodeCount();
+		FERouteTree tree = new FERouteTree(n, newStart);
+		boolean[] kept = new boolean[n];
+		kept[newStart] = true;
+
+		// Parents come first in order, so a cut-off parent is known before its children.
+		IntArrayList cut = new IntArrayList();
+		for (int k = 1; k < reached; k++) {
+			int v = order[k];
+			int nv = delta.toNew[v];
+			if (nv < 0) continue;
+			int nu = delta.toNew[parent[v]];
+			if (nu >= 0 && kept[nu] && !delta.worse[parentEdge[v]]) {
+				tree.label(nv, res[v], cap[v], nu, now.bestEdge(nu, nv));
+				kept[nv] = true;
+			} else {
+				cut.add(nv);
+			}
+		}
+
+		NodeHeap heap = new NodeHeap();
+		int[] inStart = now.inStart();
+		int[] inEdges = now.inEdges();
+		int[] edgeFrom = now.edgeFrom();
+		for (int pass = 0; pass < 2; pass++) {
+			IntArrayList seeds = pass == 0 ? cut : delta.added;
+			for (int i = 0; i < seeds.size(); i++) {
+				int v = seeds.getInt(i);
+				for (int j = inStart[v]; j < inStart[v + 1]; j++) {
+					int e = inEdges[j];
+					if (kept[edgeFrom[e]]) tree.relax(now, edgeFrom[e], e, heap);
+				}
+			}
+		}
+		for (int i = 0; i < delta.improved.size(); i++) {
+			int e = delta.improved.getInt(i);
+			if (kept[edgeFrom[e]]) tree.relax(now, edgeFrom[e], e, heap);
+		}
+
+		tree.settle(now, heap, null);
+		tree.computeOrder();
+		return tree;
+	}
+
+	/** Pop and expand until the heap is empty; records settled nodes into {@code settled} if given. */
+	private int settle(FECableGraph graph, NodeHeap heap, int[] settled) {
+		boolean[] done = new boolean[graph.nodeCount()];
+		int count = 0;
+		while (!heap.isEmpty()) {
+			int u = heap.pop();
+			if (done[u]) continue;
+			done[u] = true;
+			if (settled != null) settled[count++] = u;
+			for (int e = graph.edgeStart[u]; e < graph.edgeStart[u + 1]; e++) {
+				if (done[graph.edgeTo[e]]) continue;
+				relax(graph, u, e, heap);
+			}
+		}
+		return count;
+	}
+
+	private void relax(FECableGraph graph, int u, int e, NodeHeap heap) {
+		int v = graph.edgeTo[e];
+		int r = FELoss.clampPpm((long) res[u] + graph.edgeRes[e]);
+		long c = Math.min(cap[u], graph.edgeCap[e]);
+		if (less(r, c, res[v], cap[v])) {
+			label(v, r, c, u, e);
+			heap.push(v, r, c);
+		}
+	}
+
+	private void label(int v, int r, long c, int from, int edge) {
+		res[v] = r;
+		cap[v] = c;
+		parent[v] = from;
+		parentEdge[v] = edge;
+	}
+
+	/** Breadth-first over the parent links; drops labels not connected to the start. */
+	private void computeOrder() {
+		int n = res.length;
+		int[] childStart = new int[n + 1];
+		for (int v = 0; v < n; v++) {
+			if (v != start && res[v] != UNREACHED) childStart[parent[v] + 1]++;
+		}
+		for (int i = 0; i < n; i++) {
+			childStart[i + 1] += childStart[i];
+		}
+		int[] fill = Arrays.copyOf(childStart, n);
+		int[] children = new int[childStart[n]];
+		for (int v = 0; v < n; v++) {
+			if (v != start && res[v] != UNREACHED) children[fill[parent[v]]++] = v;
+		}
+
+		order = new int[n];
+		order[0] = start;
+		reached = 1;
+		for (int k = 0; k < reached; k++) {
+			int u = order[k];
+			for (int i = childStart[u]; i < childStart[u + 1]; i++) {
+				order[reached++] = children[i];
+			}
+		}
+		if (reached == childStart[n] + 1) return;
+
+		boolean[] inOrder = new boolean[n];
+		for (int k = 0; k < reached; k++) {
+			inOrder[order[k]] = true;
+		}
+		for (int v = 0; v < n; v++) {
+			if (!inOrder[v]) label(v, UNREACHED, 0, -1, -1);
+		}
+	}
+
+	static boolean less(int r1, long c1, int r2, long c2) {
+		return r1 < r2 || (r1 == r2 && c1 > c2);
+	}
+
+	/** Node mapping and edge changes between two compiled graphs of (parts of) the same cables. */
+	static final class Delta {
+		/** Node of the new graph for each node of the old one, or -1 if it is gone. */
+		final int[] toNew;
+		/** Per old edge: its endpoints are gone, or the best new edge between them is worse. */
+		final boolean[] worse;
+		/** Nodes of the new graph without an old counterpart. */
+		final IntArrayList added = new IntArrayList();
+		/** Edges of the new graph between old nodes that did not exist or beat the old best edge. */
+		final IntArrayList improved = new IntArrayList();
+
+		private Delta(int oldNodes, int oldEdges) {
+			toNew = new int[oldNodes];
+			worse = new boolean[oldEdges];
+		}
+	}
+
+	static Delta delta(FECableGraph old, FECableGraph now) {
+		Delta delta = new Delta(old.nodeCount(), old.edgeCount());
+		int[] toOld = new int[now.nodeCount()];
+		Arrays.fill(toOld, -1);
+		for (int i = 0; i < old.nodeCount(); i++) {
+			int j = now.indexOf(old.nodePos[i]);
+			delta.toNew[i] = j;
+			if (j >= 0) toOld[j] = i;
+		}
+
+		for (int u = 0; u < old.nodeCount(); u++) {
+			int nu = delta.toNew[u];
+			for (int e = old.edgeStart[u]; e < old.edgeStart[u + 1]; e++) {
+				int nv = delta.toNew[old.edgeTo[e]];
+				int ne = nu < 0 || nv < 0 ? -1 : now.bestEdge(nu, nv);
+				delta.worse[e] = ne < 0 || less(old.edgeRes[e], old.edgeCap[e], now.edgeRes[ne], now.edgeCap[ne]);
+			}
+		}
+
+		for (int u = 0; u < now.nodeCount(); u++) {
+			int ou = toOld[u];
+			if (ou < 0) {
+				delta.added.add(u);
+				continue;
+			}
+			for (int e = now.edgeStart[u]; e < now.edgeStart[u + 1]; e++) {
+				int ov = toOld[now.edgeTo[e]];
+				if (ov < 0) continue;
+				int oe = old.bestEdge(ou, ov);
+				if (oe < 0 || less(now.edgeRes[e], now.edgeCap[e], old.edgeRes[oe], old.edgeCap[oe])) {
+					delta.improved.add(e);
+				}
+			}
+		}
+		return delta;
+	}
+
+	/** Binary min-heap of (node, resistance, capacity) entries with lazy deletion. */
+	static final class NodeHeap {
+		private int[] node = new int[16];
+		private int[] res = new int[16];
+		private long[] cap = new long[16];
+		private int size;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		void push(int n, int r, long c) {
+			if (size == node.length) {
+				node = Arrays.copyOf(node, size * 2);
+				res = Arrays.copyOf(res, size * 2);
+				cap = Arrays.copyOf(cap, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!less(r, c, res[parent], cap[parent])) break;
+				set(i, node[parent], res[parent], cap[parent]);
+				i = parent;
+			}
+			set(i, n, r, c);
+		}
+
+		int pop() {
+			int top = node[0];
+			int last = --size;
+			int n = node[last];
+			int r = res[last];
+			long c = cap[last];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) break;
+				if (child + 1 < size && less(res[child + 1], cap[child + 1], res[child], cap[child])) child++;
+				if (!less(res[child], cap[child], r, c)) break;
+				set(i, node[child], res[child], cap[child]);
+				i = child;
+			}
+			if (size > 0) set(i, n, r, c);
+			return top;
+		}
+
+		private void set(int i, int n, int r, long c) {
+			node[i] = n;
+			res[i] = r;
+			cap[i] = c;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package gavinx.fea.network;
+
+import gavinx.fea.FeaMod;
+
+/**
+ * Aggregates over primitive endpoint arrays, for {@link FECableNetworkStats}.
+ *
+ * <p>With {@code -Dfea.vectorTotals=true} and the {@code jdk.incubator.vector} module present
+ * ({@code --add-modules jdk.incubator.vector}), arrays of at least {@link #VECTOR_THRESHOLD} elements are processed
+ * by {@link FEVectorSums}; otherwise, or if the module cannot be linked, by the scalar loops here. Both give identical
+ * results.
+ */
+final class FESums {
+	static final int VECTOR_THRESHOLD = 64;
+	static final boolean VECTORIZED = detectVectorSupport();
+
+	private FESums() {}
+
+	/** Sum of non-negative {@code values[0 .. length)}, saturating at {@link Long#MAX_VALUE}. */
+	static long saturatingSum(long[] values, int length) {
+		if (VECTORIZED && length >= VECTOR_THRESHOLD) return FEVectorSums.saturatingSum(values, length);
+		return scalarSaturatingSum(values, length);
+	}
+
+	/** Whether {@code a[i] > b[i]} for some {@code i < length}. */
+	static boolean anyGreater(long[] a, long[] b, int length) {
+		if (VECTORIZED && length >= VECTOR_THRESHOLD) return FEVectorSums.anyGreater(a, b, length);
+		return scalarAnyGreater(a, b, length);
+	}
+
+	static long scalarSaturatingSum(long[] values, int length) {
+		long total = 0;
+		for (int i = 0; i < length; i++) {
+			total = satAdd(total, values[i]);
+		}
+		return total;
+	}
+
+	static boolean scalarAnyGreater(long[] a, long[] b, int length) {
+		for (int i = 0; i < length; i++) {
+			if (a[i] > b[i]) return true;
+		}
+		return false;
+	}
+
+	/** Saturating add of two non-negative values. */
+	static long satAdd(long a, long b) {
+		long r = a + b;
+		return r < 0 ? Long.MAX_VALUE : r;
+	}
+
+	private static boolean detectVectorSupport() {
+		if (!Boolean.getBoolean("fea.vectorTotals")) return false;
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+			FeaMod.LOGGER.warn("fea.vectorTotals is set but jdk.incubator.vector is not available; using scalar totals."
+					+ " Add --add-modules jdk.incubator.vector to the JVM arguments.");
+			return false;
+		}
+		try {
+			FEVectorSums.saturatingSum(new long[VECTOR_THRESHOLD], VECTOR_THRESHOLD);
+			FeaMod.LOGGER.info("Using vectorized network totals ({} lanes)", FEVectorSums.lanes());
+			return true;
+		} catch (LinkageError e) {
+			FeaMod.LOGGER.warn("Vectorized network totals unavailable; using scalar totals", e);
+			return false;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package gavinx.fea.network;
+
+import gavinx.fea.FeaMod;
+import gavinx.fea.api.FECable;
+import gavinx.fea.api.FEStorage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.zip.GZIPOutputStream;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * Opt-in recorder of {@link FECableTransfer} inputs for offline replay with {@link FETraceReplayer}.
+ *
+ * <p>While recording, every {@link FECableTransfer#distributeFrom distributeFrom} call in the recorded world, and
+ * every drain of a network buffer in buffered transfer mode, appends the network topology (once per network), the
+ * amount/capacity of the source and of every route target, the request itself and its result. Route cache drops are
+ * recorded too, so a replay rebuilds routes where the server did. {@link FECableTransfer#pullInto pullInto} calls
+ * and buffered inserts also move FE and change the network's loss carry, but are not replayable; they leave an
+ * UNTRACED record so a replay can tell that the trace does not hold the whole workload. The trace is a gzipped
+ * stream of big-endian records:
+ *
+ * <pre>
+ * header:   int MAGIC, int VERSION
+ * TOPOLOGY: byte 1, int networkId, int nodeCount, long[nodeCount] nodePos,
+ *           per node: int degree, degree * (int to, int resistancePpm, long capacity),
+ *           per node: int faces, faces * (long pos, byte side)
+ * REQUEST:  byte 2, long gameTime, int networkId, long sourcePos, byte sourceSide, long maxExtract,
+ *           boolean simulate, int startNode, byte enterSide, int startResistancePpm, long startCapacity,
+ *           long lossCarry, long sourceAmount, long sourceCapacity, boolean allocated, int targets,
+ *           targets * (long pos, byte side, int group [, long amount, long capacity if group == own index]
+ *                      [, long inputLimit, int priority [, long allocation if allocated]
+ *                         if group != GROUP_NONE]),
+ *           long extracted
+ * DROP:     byte 3, int networkId
+ * UNTRACED: byte 4, long gameTime, int networkId, byte kind, long movedFE
+ * </pre>
+ *
+ * <p>{@code group} is {@link #GROUP_NONE} for a target without an accepting storage, {@link #GROUP_SOURCE} if it
+ * shares the source's backing storage, else the index of the first target sharing its backing storage.
+ * {@code kind} is {@link #UNTRACED_PULL} or {@link #UNTRACED_BUFFER}.
+ *
+ * <p>Only one world is recorded at a time. Write failures stop the recording and are logged.
+ */
+public final class FETraceRecorder {
+	static final int MAGIC = 0x46454154; // "FEAT"
+	static final int VERSION = 5;
+
+	static final byte REC_TOPOLOGY = 1;
+	static final byte REC_REQUEST = 2;
+	static final byte REC_DROP = 3;
+	static final byte REC_UNTRACED = 4;
+
+	static final byte UNTRACED_PULL = 0;
+	static final byte UNTRACED_BUFFER = 1;
+
+	static final int GROUP_NONE = -2;
+	static final int GROUP_SOURCE = -1;
+
+	private static volatile FETraceRecorder active;
+
+	private final ServerWorld world;
+	private final Path file;
+	private final DataOutputStream out;
+	private final BitSet writtenNetworks = new BitSet();
+	private long requests;
+
+	private FETraceRecorder(ServerWorld world, Path file) throws IOException {
+		this.world = world;
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file))));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/** Start recording transfers in {@code world} to {@code file}, replacing any running recording. */
+	public static synchronized void start(ServerWorld world, Path file) throws IOException {
+		stop();
+		active = new FETraceRecorder(world, file);
+		FeaMod.LOGGER.info("Recording FE transfer trace to {}", file);
+	}
+
+	/** Stop and flush the running recording, if any. */
+	public static synchronized void stop() throws IOException {
+		FETraceRecorder recorder = active;
+		if (recorder == null) return;
+		active = null;
+		recorder.out.close();
+		FeaMod.LOGGER.info("FE transfer trace {} closed after {} requests", recorder.file, recorder.requests);
+	}
+
+	public static boolean isRecording() {
+		return active != null;
+	}
+
+	/** The recorder for {@code world}, or null when it is not being recorded. */
+	static FETraceRecorder forWorld(ServerWorld world) {
+		FETraceRecorder recorder = active;
+		return recorder != null && recorder.world == world ? recorder : null;
+	}
+
+	static void onRoutesDropped(ServerWorld world, int networkId) {
+		FETraceRecorder recorder = forWorld(world);
+		if (recorder == null) return;
+		synchronized (recorder) {
+			try {
+				recorder.out.writeByte(REC_DROP);
+				recorder.out.writeInt(networkId);
+			} catch (IOException e) {
+				recorder.fail(e);
+			}
+		}
+	}
+
+	/** Mark a committed transfer of {@code movedFE} that the trace does not record. */
+	static void onUntraced(ServerWorld world, int networkId, byte kind, long movedFE) {
+		if (movedFE <= 0) return;
+		FETraceRecorder recorder = forWorld(world);
+		if (recorder == null) return;
+		synchronized (recorder) {
+			if (active != recorder) return;
+			try {
+				recorder.out.writeByte(REC_UNTRACED);
+				recorder.out.writeLong(world.getTime());
+				recorder.out.writeInt(networkId);
+				recorder.out.writeByte(kind);
+				recorder.out.writeLong(movedFE);
+			} catch (IOException e) {
+				recorder.fail(e);
+			}
+		}
+	}
+
+	/** Amount/capacity of the source and the resolved consumers before a transfer: {@code [a0, c0, a1, c1, ...]}. */
+	static long[] capture(FEStorage source, FEStorage[] consumers) {
+		long[] state = new long[2 + consumers.length * 2];
+		state[0] = source.getAmount();
+		state[1] = source.getCapacity();
+		for (int t = 0; t < consumers.length; t++) {
+			if (consumers[t] == null) continue;
+			state[2 + t * 2] = consumers[t].getAmount();
+			state[3 + t * 2] = consumers[t].getCapacity();
+		}
+		return state;
+	}
+
+	synchronized void request(FECableNetworkManager.FECableNetwork network, BlockPos sourcePos, Direction sourceSide,
+			FECable startCable, FECableTransfer.Route route, FEStorage source, FECableTransfer.Plan plan, long[] before,
+			long maxExtractFE, boolean simulate, long extracted) {
+		if (active != this) return;
+		try {
+			if (!writtenNetworks.get(network.id)) {
+				writeTopology(network);
+				writtenNetworks.set(network.id);
+			}
+
+			BlockPos startPos = sourcePos.offset(sourceSide);
+			out.writeByte(REC_REQUEST);
+			out.writeLong(world.getTime());
+			out.writeInt(network.id);
+			out.writeLong(sourcePos.asLong());
+			out.writeByte(sourceSide.getId());
+			out.writeLong(maxExtractFE);
+			out.writeBoolean(simulate);
+			out.writeInt(network.graph.indexOf(startPos.asLong()));
+			out.writeByte(sourceSide.getOpposite().getId());
+			out.writeInt(FELoss.clampPpm(startCable.getResistancePpm()));
+			out.writeLong(Math.max(0L, startCable.getTransferCapacityFE()));
+			// Not yet updated by this request.
+			out.writeLong(network.lossCarry);
+			out.writeLong(before[0]);
+			out.writeLong(before[1]);
+
+			FEStorage[] consumers = plan.consumers;
+			FEStorage sourceBacking = source.getBackingStorage();
+			out.writeBoolean(plan.allocation != null);
+			out.writeInt(route.size());
+			for (int t = 0; t < route.size(); t++) {
+				out.writeLong(route.pos[t].asLong());
+				out.writeByte(route.side[t].getId());
+				int group = group(consumers, t, sourceBacking);
+				out.writeInt(group);
+				if (group == t) {
+					out.writeLong(before[2 + t * 2]);
+					out.writeLong(before[3 + t * 2]);
+				}
+				if (group != GROUP_NONE) {
+					out.writeLong(plan.inputLimit[t]);
+					out.writeInt(plan.priority == null ? 0 : plan.priority[t]);
+					if (plan.allocation != null) out.writeLong(plan.allocation[t]);
+				}
+			}
+			out.writeLong(extracted);
+			requests++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	private static int group(FEStorage[] consumers, int t, FEStorage sourceBacking) {
+		if (consumers[t] == null) return GROUP_NONE;
+		FEStorage backing = consumers[t].getBackingStorage();
+		if (backing == sourceBacking) return GROUP_SOURCE;
+		for (int i = 0; i < t; i++) {
+			if (consumers[i] != null && consumers[i].getBackingStorage() == backing) return i;
+		}
+		return t;
+	}
+
+	private void writeTopology(FECableNetworkManager.FECableNetwork network) throws IOException {
+		FECableGraph graph = network.graph;
+		int n = graph.nodeCount();
+		out.writeByte(REC_TOPOLOGY);
+		out.writeInt(network.id);
+		out.writeInt(n);
+		for (int i = 0; i < n; i++) {
+			out.writeLong(graph.nodePos[i]);
+		}
+		for (int i = 0; i < n; i++) {
+			out.writeInt(graph.edgeStart[i + 1] - graph.edgeStart[i]);
+			for (int e = graph.edgeStart[i]; e < graph.edgeStart[i + 1]; e++) {
+				out.writeInt(graph.edgeTo[e]);
+				out.writeInt(graph.edgeRes[e]);
+				out.writeLong(graph.edgeCap[e]);
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			out.writeInt(graph.faceStart[i + 1] - graph.faceStart[i]);
+			for (int f = graph.faceStart[i]; f < graph.faceStart[i + 1]; f++) {
+				out.writeLong(graph.facePos[f]);
+				out.writeByte(graph.faceSide[f]);
+			}
+		}
+	}
+
+	private void fail(IOException e) {
+		FeaMod.LOGGER.error("FE transfer trace {} failed, recording stopped", file, e);
+		synchronized (FETraceRecorder.class) {
+			if (active == this) active = null;
+		}
+		try {
+			out.close();
+		} catch (IOException ignored) {
+			// already failing
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FEStorage;
+import gavinx.fea.impl.SimpleFEStorage;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import net.minecraft.util.math.Direction;
+
+/**
+ * Replays a trace written by {@link FETraceRecorder} against the transfer engine, without a running server.
+ *
+ * <p>Each request rebuilds the recorded source and target storages as {@link SimpleFEStorage}s, finds the route on
+ * the recorded topology, runs the distribution and compares the extracted FE with the recorded result. Only
+ * pathfinding and distribution are timed.
+ *
+ * <p>The route is a reference search: one search of the full recorded graph per start node, narrowed to each entry
+ * cable face with {@link FECableTransfer#withEntry}, cached and dropped as the server's routes were. The server
+ * searches its contracted graph instead, which the trace does not hold (it depends on which faces extract), so the
+ * search cost differs from the server's. Paths and their labels are the same; if targets with equal labels come out
+ * in another order, the request counts as a {@link Result#routeMismatches() route mismatch} and is not distributed.
+ *
+ * <p>Pulls and buffered inserts are only marked in a trace and are not replayed; {@link Result#untraced()} counts
+ * them, and a trace with any of them does not hold the server's whole transfer workload.
+ */
+public final class FETraceReplayer {
+	private FETraceReplayer() {}
+
+	/**
+	 * @param requests replayed requests
+	 * @param mismatches requests whose extracted FE differs from the recording
+	 * @param routeMismatches requests skipped because the replayed route differs from the recorded targets
+	 * @param untraced transfers the trace marks but does not record (pulls, buffered inserts)
+	 * @param untracedFE FE moved by those transfers
+	 */
+	public record Result(long requests, long mismatches, long routeMismatches, long extractedFE, long engineNanos,
+			long untraced, long untracedFE) {
+		public double requestsPerSecond() {
+			return engineNanos == 0 ? 0 : requests * 1_000_000_000.0 / engineNanos;
+		}
+	}
+
+	/** Replay the whole trace at {@code trace} once. */
+	public static Result replay(Path trace) throws IOException {
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(Files.newInputStream(trace))))) {
+			if (in.readInt() != FETraceRecorder.MAGIC) throw new IOException("not an FE transfer trace: " + trace);
+			int version = in.readInt();
+			if (version != FETraceRecorder.VERSION) throw new IOException("unsupported trace version " + version);
+			return new Replay(in).run();
+		}
+	}
+
+	private static final class Replay {
+		private final DataInputStream in;
+		private final Int2ObjectOpenHashMap<FECableGraph> graphs = new Int2ObjectOpenHashMap<>();
+		private final Int2ObjectOpenHashMap<Long2ObjectOpenHashMap<FECableTransfer.Route>> routes =
+				new Int2ObjectOpenHashMap<>();
+		// Per network, the route of each start node before its entry cable face is applied.
+		private final Int2ObjectOpenHashMap<Int2ObjectOpenHashMap<FECableTransfer.Route>> baseRoutes =
+				new Int2ObjectOpenHashMap<>();
+
+		private long requests;
+		private long mismatches;
+		private long routeMismatches;
+		private long extractedFE;
+		private long engineNanos;
+		private long untraced;
+		private long untracedFE;
+
+		Replay(DataInputStream in) {
+			this.in = in;
+		}
+
+		Result run() throws IOException {
+			while (true) {
+				int type;
+				try {
+					type = in.readByte();
+				} catch (EOFException e) {
+					break;
+				}
+				switch (type) {
+					case FETraceRecorder.REC_TOPOLOGY -> readTopology();
+					case FETraceRecorder.REC_REQUEST -> replayRequest();
+					case FETraceRecorder.REC_DROP -> {
+						int networkId = in.readInt();
+						Long2ObjectOpenHashMap<FECableTransfer.Route> cached = routes.get(networkId);
+						if (cached != null) cached.clear();
+						Int2ObjectOpenHashMap<FECableTransfer.Route> bases = baseRoutes.get(networkId);
+						if (bases != null) bases.clear();
+					}
+					case FETraceRecorder.REC_UNTRACED -> {
+						in.readLong(); // game time
+						in.readInt(); // network id
+						in.readByte(); // kind
+						untracedFE += in.readLong();
+						untraced++;
+					}
+					default -> throw new IOException("corrupt trace: record type " + type);
+				}
+			}
+			return new Result(requests, mismatches, routeMismatches, extractedFE, engineNanos, untraced, untracedFE);
+		}
+
+		private void readTopology() throws IOException {
+			int networkId = in.readInt();
+			int n = in.readInt();
+			FECableGraph.Builder builder = new FECableGraph.Builder();
+			for (int i = 0; i < n; i++) {
+				builder.node(in.readLong());
+			}
+			for (int i = 0; i < n; i++) {
+				int degree = in.readInt();
+				for (int e = 0; e < degree; e++) {
+					builder.edge(i, in.readInt(), in.readInt(), in.readLong());
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				int faces = in.readInt();
+				for (int f = 0; f < faces; f++) {
+					builder.face(i, in.readLong(), Direction.byId(in.readByte()));
+				}
+			}
+			graphs.put(networkId, builder.build());
+			routes.put(networkId, new Long2ObjectOpenHashMap<>());
+			baseRoutes.put(networkId, new Int2ObjectOpenHashMap<>());
+		}
+
+		private void replayRequest() throws IOException {
+			in.readLong(); // game time
+			int networkId = in.readInt();
+			in.readLong(); // source pos
+			in.readByte(); // source side
+			long maxExtract = in.readLong();
+			boolean simulate = in.readBoolean();
+			int startNode = in.readInt();
+			int enterSide = in.readByte();
+			int r0 = in.readInt();
+			long c0 = in.readLong();
+			long lossCarry = in.readLong();
+			FEStorage source = storage(in.readLong(), in.readLong(), false, true);
+
+			boolean allocated = in.readBoolean();
+			int count = in.readInt();
+			long[] targetPos = new long[count];
+			byte[] targetSide = new byte[count];
+			FECableTransfer.Plan plan = new FECableTransfer.Plan(count);
+			FEStorage[] consumers = plan.consumers;
+			plan.lossCarry = lossCarry;
+			if (allocated) plan.allocation = new long[count];
+			for (int t = 0; t < count; t++) {
+				targetPos[t] = in.readLong();
+				targetSide[t] = in.readByte();
+				int group = in.readInt();
+				if (group == t) {
+					consumers[t] = storage(in.readLong(), in.readLong(), true, false);
+				} else if (group == FETraceRecorder.GROUP_SOURCE) {
+					consumers[t] = source;
+				} else if (group >= 0) {
+					consumers[t] = consumers[group];
+				}
+				if (group != FETraceRecorder.GROUP_NONE) {
+					plan.inputLimit[t] = in.readLong();
+					plan.setPriority(t, in.readInt());
+					if (allocated) plan.allocation[t] = in.readLong();
+				}
+			}
+			plan.orderByPriority();
+			long recorded = in.readLong();
+
+			FECableGraph graph = graphs.get(networkId);
+			if (graph == null) throw new IOException("corrupt trace: request on unknown network " + networkId);
+			Long2ObjectOpenHashMap<FECableTransfer.Route> cached = routes.get(networkId);
+			requests++;
+
+			long startNanos = System.nanoTime();
+			long key = (long) startNode * 6 + enterSide;
+			FECableTransfer.Route route = cached.get(key);
+			if (route == null) {
+				Int2ObjectOpenHashMap<FECableTransfer.Route> bases = baseRoutes.get(networkId);
+				FECableTransfer.Route base = bases.get(startNode);
+				if (base == null) {
+					// The recorded targets are exactly the faces the server's route accepted.
+					LongOpenHashSet[] endpoints = new LongOpenHashSet[6];
+					for (int i = 0; i < 6; i++) {
+						endpoints[i] = new LongOpenHashSet();
+					}
+					for (int t = 0; t < count; t++) {
+						endpoints[targetSide[t]].add(targetPos[t]);
+					}
+					base = FECableTransfer.routeOf(graph, FERouteTree.build(graph, startNode),
+							f -> endpoints[graph.faceSide[f]].contains(graph.facePos[f]));
+					bases.put(startNode, base);
+				}
+				route = FECableTransfer.withEntry(base, r0, c0);
+				cached.put(key, route);
+			}
+
+			if (!sameTargets(route, targetPos, targetSide)) {
+				engineNanos += System.nanoTime() - startNanos;
+				routeMismatches++;
+				return;
+			}
+
+			long extracted = FECableTransfer.distribute(source, route, plan, maxExtract, simulate);
+			engineNanos += System.nanoTime() - startNanos;
+
+			extractedFE += extracted;
+			if (extracted != recorded) mismatches++;
+		}
+
+		private static boolean sameTargets(FECableTransfer.Route route, long[] targetPos, byte[] targetSide) {
+			if (route.size() != targetPos.length) return false;
+			for (int t = 0; t < targetPos.length; t++) {
+				if (route.pos[t].asLong() != targetPos[t] || route.side[t].getId() != targetSide[t]) return false;
+			}
+			return true;
+		}
+
+		private static FEStorage storage(long amount, long capacity, boolean insert, boolean extract) {
+			long cap = Math.max(0L, capacity);
+			return new SimpleFEStorage(cap, Math.max(0L, Math.min(amount, cap)), insert, extract);
+		}
+	}
+}
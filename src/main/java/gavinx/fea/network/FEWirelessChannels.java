@@ -0,0 +1,22 @@
+package gavinx.fea.network;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import net.minecraft.server.world.ServerWorld;
+
+/** Static access to per-world wireless channel managers. */
+public final class FEWirelessChannels {
+	private FEWirelessChannels() {}
+
+	private static final Map<ServerWorld, FEWirelessManager> MANAGERS = new WeakHashMap<>();
+
+	public static synchronized FEWirelessManager get(ServerWorld world) {
+		return MANAGERS.computeIfAbsent(world, FEWirelessManager::new);
+	}
+
+	/** The manager of {@code world} if one was already created, else null. */
+	public static synchronized FEWirelessManager getIfPresent(ServerWorld world) {
+		return MANAGERS.get(world);
+	}
+}
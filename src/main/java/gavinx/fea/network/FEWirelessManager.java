@@ -0,0 +1,168 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FEApi;
+import gavinx.fea.api.FELinkPoint;
+import gavinx.fea.api.FESideMode;
+import gavinx.fea.api.FEStorage;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * Wireless FE channels for one world.
+ *
+ * <p>{@link FELinkPoint} ports join a numeric channel; once per world tick every channel is settled in a single
+ * pass over its participants (no spatial search). The port mode decides the role:
+ * <ul>
+ *   <li>{@link FESideMode#OUT}: transmitter</li>
+ *   <li>{@link FESideMode#IN}: receiver</li>
+ *   <li>{@link FESideMode#BOTH}: buffer; takes what receivers leave over and supplies what transmitters cannot</li>
+ * </ul>
+ *
+ * <p>Each port moves at most {@link FELinkPoint#getTransferLimitFE()} per tick, over all steps of the settlement
+ * (see {@link FEWirelessSettlement}). Loss is applied at both ends: a transmitter's
+ * {@link FELinkPoint#getResistancePpm() resistance} reduces what it puts on air, a receiver's reduces what it gets
+ * from air. When supply and demand differ, the short side is served in full and the long side
+ * proportionally to its offer/demand.
+ *
+ * <p>Participants sit at a block position and the storage is queried on the port's side. Unloaded participants are
+ * skipped, not removed. Registrations are kept in memory only; the owning mod re-joins its ports after load.
+ */
+public final class FEWirelessManager {
+	private final ServerWorld world;
+	private final Int2ObjectOpenHashMap<Channel> channels = new Int2ObjectOpenHashMap<>();
+	// pos -> channels joined at pos
+	private final Long2ObjectOpenHashMap<IntArrayList> channelsByPos = new Long2ObjectOpenHashMap<>();
+
+	private final FEWirelessSettlement settlement = new FEWirelessSettlement();
+
+	public FEWirelessManager(ServerWorld world) {
+		this.world = Objects.requireNonNull(world, "world");
+	}
+
+	/**
+	 * Join the port at {@code pos}/{@code side} to a channel. A block takes part in a channel through one side;
+	 * joining again replaces the side.
+	 *
+	 * @return false if the port already was on the channel with that side
+	 */
+	public boolean join(int channel, BlockPos pos, Direction side) {
+		long p = pos.asLong();
+		Channel ch = channels.computeIfAbsent(channel, c -> new Channel());
+		int slot = ch.slotByPos.get(p);
+		if (slot >= 0) {
+			if (ch.side[slot] == side.getId()) return false;
+			ch.side[slot] = (byte) side.getId();
+			return true;
+		}
+		ch.add(p, side);
+		channelsByPos.computeIfAbsent(p, k -> new IntArrayList(1)).add(channel);
+		return true;
+	}
+
+	/** @return false if the block was not on the channel */
+	public boolean leave(int channel, BlockPos pos) {
+		long p = pos.asLong();
+		Channel ch = channels.get(channel);
+		if (ch == null || !ch.remove(p)) return false;
+		if (ch.count == 0) channels.remove(channel);
+
+		IntArrayList joined = channelsByPos.get(p);
+		if (joined != null) {
+			for (int i = 0; i < joined.size(); i++) {
+				if (joined.getInt(i) == channel) {
+					joined.removeInt(i);
+					break;
+				}
+			}
+			if (joined.isEmpty()) channelsByPos.remove(p);
+		}
+		return true;
+	}
+
+	/** Remove the block from every channel, e.g. when it is broken. */
+	public void leaveAll(BlockPos pos) {
+		IntArrayList joined = channelsByPos.remove(pos.asLong());
+		if (joined == null) return;
+		for (int i = 0; i < joined.size(); i++) {
+			int channel = joined.getInt(i);
+			Channel ch = channels.get(channel);
+			if (ch == null) continue;
+			ch.remove(pos.asLong());
+			if (ch.count == 0) channels.remove(channel);
+		}
+	}
+
+	public int getParticipantCount(int channel) {
+		Channel ch = channels.get(channel);
+		return ch == null ? 0 : ch.count;
+	}
+
+	/** Settle every channel once. Called at the end of each world tick. */
+	public void tick() {
+		if (channels.isEmpty()) return;
+		for (Channel ch : channels.values()) {
+			settle(ch);
+		}
+	}
+
+	private void settle(Channel ch) {
+		settlement.begin();
+		for (int i = 0; i < ch.count; i++) {
+			BlockPos pos = BlockPos.fromLong(ch.pos[i]);
+			if (!world.isChunkLoaded(pos)) continue;
+
+			Direction side = Direction.byId(ch.side[i]);
+			FELinkPoint port = FEApi.LINK_POINT.find(world, pos, side);
+			if (port == null) continue;
+			FEStorage s = FEApi.STORAGE.find(world, pos, side);
+			if (s == null) continue;
+			settlement.add(s, port.getMode(), port.getTransferLimitFE(), port.getResistancePpm());
+		}
+		settlement.settle();
+	}
+
+	/** Participants of one channel in parallel arrays; removal swaps the last slot in. */
+	private static final class Channel {
+		long[] pos = new long[4];
+		byte[] side = new byte[4];
+		int count;
+		final Long2IntOpenHashMap slotByPos = new Long2IntOpenHashMap();
+
+		Channel() {
+			slotByPos.defaultReturnValue(-1);
+		}
+
+		void add(long p, Direction s) {
+			if (count == pos.length) {
+				pos = Arrays.copyOf(pos, count * 2);
+				side = Arrays.copyOf(side, count * 2);
+			}
+			pos[count] = p;
+			side[count] = (byte) s.getId();
+			slotByPos.put(p, count);
+			count++;
+		}
+
+		boolean remove(long p) {
+			int slot = slotByPos.remove(p);
+			if (slot < 0) return false;
+			int last = --count;
+			if (slot != last) {
+				pos[slot] = pos[last];
+				side[slot] = side[last];
+				slotByPos.put(pos[slot], slot);
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FELinkPoint;
+import gavinx.fea.api.FESideMode;
+import gavinx.fea.api.FEStorage;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import java.util.Arrays;
+
+import net.fabricmc.fabric.api.transfer.v1.transaction.Transaction;
+
+/**
+ * Settlement of one wireless channel tick for {@link FEWirelessManager}, over participants whose ports and storages
+ * are already looked up.
+ *
+ * <p>Transmitters feed receivers first, then buffers; buffers then feed receivers. A port's
+ * {@link FELinkPoint#getTransferLimitFE() transfer limit} is one allowance for the whole tick: what it extracted or
+ * inserted in an earlier step is no longer available to the later ones. Scratch arrays are kept between settlements
+ * and grown to the largest channel.
+ */
+final class FEWirelessSettlement {
+	private static final byte ROLE_TX = 1;
+	private static final byte ROLE_RX = 2;
+	private static final byte ROLE_BUFFER = 3;
+
+	private FEStorage[] storage = new FEStorage[16];
+	private byte[] role = new byte[16];
+	private int[] resistance = new int[16];
+	// Transfer limit not yet used this tick.
+	private long[] left = new long[16];
+	private long[] raw = new long[16];
+	private long[] air = new long[16];
+	private long[] share = new long[16];
+	// FE extracted or inserted by the current step.
+	private long[] moved = new long[16];
+	private final ReferenceOpenHashSet<FEStorage> seen = new ReferenceOpenHashSet<>();
+	private int count;
+	private boolean anySender;
+	private boolean anyReceiver;
+
+	/** Forget the previous channel. */
+	void begin() {
+		Arrays.fill(storage, 0, count, null);
+		seen.clear();
+		count = 0;
+		anySender = false;
+		anyReceiver = false;
+	}
+
+	/**
+	 * Add a participant whose port has {@code mode}, {@code limit} and {@code resistancePpm}. Participants are served
+	 * in the order they are added.
+	 *
+	 * @return false if it can neither send nor receive, or shares its backing storage with an earlier participant
+	 */
+	boolean add(FEStorage s, FESideMode mode, long limit, int resistancePpm) {
+		boolean send = mode.canExtract() && s.supportsExtraction();
+		boolean receive = mode.canInsert() && s.supportsInsertion();
+		if (!send && !receive) return false;
+		// Several ports of one multiblock would otherwise each offer the same energy.
+		if (!seen.add(s.getBackingStorage())) return false;
+
+		ensureScratch(count + 1);
+		int i = count++;
+		storage[i] = s;
+		role[i] = send && receive ? ROLE_BUFFER : send ? ROLE_TX : ROLE_RX;
+		resistance[i] = FELoss.clampPpm(resistancePpm);
+		left[i] = Math.max(0L, limit);
+		anySender |= send;
+		anyReceiver |= receive;
+		return true;
+	}
+
+	/** Move FE between the added participants, then drop their storages. */
+	void settle() {
+		try {
+			if (!anySender || !anyReceiver) return;
+			try (Transaction outer = Transaction.openOuter()) {
+				move(ROLE_TX, ROLE_RX, outer);
+				move(ROLE_TX, ROLE_BUFFER, outer);
+				move(ROLE_BUFFER, ROLE_RX, outer);
+				outer.commit();
+			}
+		} finally {
+			// Do not keep storages of unloaded chunks alive.
+			begin();
+		}
+	}
+
+	/**
+	 * Move FE from all participants of {@code senderRole} to all of {@code receiverRole}. Offers and demands are
+	 * simulated first, so the actual amounts are known before anything is committed; the step is rolled back if a
+	 * storage then behaves differently.
+	 */
+	private void move(byte senderRole, byte receiverRole, Transaction outer) {
+		int n = count;
+		// Pass 1: what senders can put on air.
+		long airOffered = 0;
+		for (int i = 0; i < n; i++) {
+			air[i] = 0;
+			moved[i] = 0;
+			if (role[i] != senderRole || left[i] == 0) continue;
+			try (Transaction sim = Transaction.openNested(outer)) {
+				raw[i] = storage[i].extract(left[i], sim);
+			}
+			air[i] = FELoss.delivered(raw[i], resistance[i], 0);
+			airOffered = satAdd(airOffered, air[i]);
+		}
+		if (airOffered == 0) return;
+
+		// Pass 2: how much air each receiver could use.
+		long airWanted = 0;
+		for (int i = 0; i < n; i++) {
+			if (role[i] != receiverRole) continue;
+			air[i] = 0;
+			if (resistance[i] >= FELoss.PPM || left[i] == 0) continue;
+			long accepted;
+			try (Transaction sim = Transaction.openNested(outer)) {
+				accepted = storage[i].insert(left[i], sim);
+			}
+			raw[i] = accepted;
+			air[i] = FELoss.sent(accepted, resistance[i], 0);
+			airWanted = satAdd(airWanted, air[i]);
+		}
+		if (airWanted == 0) return;
+
+		long airMoved = Math.min(airOffered, airWanted);
+
+		try (Transaction step = Transaction.openNested(outer)) {
+			// Pass 3: deliver to receivers.
+			divide(receiverRole, airMoved, airWanted);
+			long airUsed = 0;
+			for (int i = 0; i < n; i++) {
+				if (role[i] != receiverRole || share[i] == 0) continue;
+				long deliver = Math.min(raw[i], FELoss.delivered(share[i], resistance[i], 0));
+				if (deliver <= 0) continue;
+				long inserted = storage[i].insert(deliver, step);
+				moved[i] = inserted;
+				airUsed += inserted == deliver ? share[i]
+						: Math.min(share[i], FELoss.sent(inserted, resistance[i], 0));
+			}
+			if (airUsed == 0) return;
+
+			// Pass 4: take exactly the air that was used from senders.
+			divide(senderRole, airUsed, airOffered);
+			for (int i = 0; i < n; i++) {
+				if (role[i] != senderRole || share[i] == 0) continue;
+				long send = Math.min(raw[i], FELoss.sent(share[i], resistance[i], 0));
+				if (storage[i].extract(send, step) != send) {
+					// A sender changed since simulation; abort rather than deliver energy nobody paid for.
+					return;
+				}
+				moved[i] = send;
+			}
+			step.commit();
+		}
+		for (int i = 0; i < n; i++) {
+			if (role[i] == senderRole || role[i] == receiverRole) left[i] -= moved[i];
+		}
+	}
+
+	/**
+	 * Split {@code total} over the participants of {@code r} proportionally to {@code air[i]} (whose sum is
+	 * {@code weightSum >= total}) into {@code share}. Each share is at most its weight and the shares sum to
+	 * {@code total}.
+	 */
+	private void divide(byte r, long total, long weightSum) {
+		int n = count;
+		long assigned = 0;
+		for (int i = 0; i < n; i++) {
+			share[i] = 0;
+			if (role[i] != r || air[i] == 0) continue;
+			share[i] = total == weightSum ? air[i] : FECableTransfer.mulDiv(air[i], total, weightSum);
+			assigned += share[i];
+		}
+		// Flooring leaves less than one unit per participant; hand it out in slot order.
+		for (int i = 0; i < n && assigned < total; i++) {
+			if (role[i] != r || share[i] >= air[i]) continue;
+			share[i]++;
+			assigned++;
+		}
+	}
+
+	private void ensureScratch(int n) {
+		if (n <= role.length) return;
+		int size = Math.max(n, role.length * 2);
+		storage = Arrays.copyOf(storage, size);
+		role = Arrays.copyOf(role, size);
+		resistance = Arrays.copyOf(resistance, size);
+		left = Arrays.copyOf(left, size);
+		raw = Arrays.copyOf(raw, size);
+		air = Arrays.copyOf(air, size);
+		share = Arrays.copyOf(share, size);
+		moved = Arrays.copyOf(moved, size);
+	}
+
+	private static long satAdd(long a, long b) {
+		long r = a + b;
+		return r < 0 ? Long.MAX_VALUE : r;
+	}
+}
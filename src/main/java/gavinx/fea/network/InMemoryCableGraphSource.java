@@ -0,0 +1,122 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FEBlockEnergy;
+import gavinx.fea.api.FECable;
+import gavinx.fea.api.FELinkPoint;
+import gavinx.fea.api.FEStorage;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/**
+ * {@link CableGraphSource} that answers from maps, for tests, benchmarks and headless simulation.
+ *
+ * <p>Entries are per side ({@code put*(pos, side, value)}) or for all six sides at once. After changing an entry
+ * that belongs to an existing network, call {@link FECableNetworkManager#markDirty(BlockPos)} just like a block
+ * change in a world would.
+ */
+public final class InMemoryCableGraphSource implements CableGraphSource {
+	private final Long2ObjectOpenHashMap<FECable>[] cables = sided();
+	private final Long2ObjectOpenHashMap<FEStorage>[] storages = sided();
+	private final Long2ObjectOpenHashMap<FELinkPoint>[] linkPoints = sided();
+	private final Long2ObjectOpenHashMap<FEBlockEnergy> blockEnergy = new Long2ObjectOpenHashMap<>();
+	private long time;
+
+	public void putCable(BlockPos pos, FECable cable) {
+		putAll(cables, pos, cable);
+	}
+
+	public void putCable(BlockPos pos, Direction side, FECable cable) {
+		put(cables, pos, side, cable);
+	}
+
+	public void putStorage(BlockPos pos, FEStorage storage) {
+		putAll(storages, pos, storage);
+	}
+
+	public void putStorage(BlockPos pos, Direction side, FEStorage storage) {
+		put(storages, pos, side, storage);
+	}
+
+	public void putLinkPoint(BlockPos pos, Direction side, FELinkPoint port) {
+		put(linkPoints, pos, side, port);
+	}
+
+	public void putBlockEnergy(BlockPos pos, FEBlockEnergy def) {
+		if (def == null) {
+			blockEnergy.remove(pos.asLong());
+		} else {
+			blockEnergy.put(pos.asLong(), def);
+		}
+	}
+
+	/** Remove everything at {@code pos}. */
+	public void clear(BlockPos pos) {
+		long p = pos.asLong();
+		for (int i = 0; i < 6; i++) {
+			cables[i].remove(p);
+			storages[i].remove(p);
+			linkPoints[i].remove(p);
+		}
+		blockEnergy.remove(p);
+	}
+
+	public void setTime(long time) {
+		this.time = time;
+	}
+
+	/** Advance the clock by one tick. */
+	public void tick() {
+		time++;
+	}
+
+	@Override
+	public FECable findCable(BlockPos pos, Direction side) {
+		return cables[side.getId()].get(pos.asLong());
+	}
+
+	@Override
+	public FEStorage findStorage(BlockPos pos, Direction side) {
+		return storages[side.getId()].get(pos.asLong());
+	}
+
+	@Override
+	public FEBlockEnergy findBlockEnergy(BlockPos pos) {
+		return blockEnergy.get(pos.asLong());
+	}
+
+	@Override
+	public FELinkPoint findLinkPoint(BlockPos pos, Direction side) {
+		return linkPoints[side.getId()].get(pos.asLong());
+	}
+
+	@Override
+	public long getTime() {
+		return time;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <T> Long2ObjectOpenHashMap<T>[] sided() {
+		Long2ObjectOpenHashMap<T>[] maps = new Long2ObjectOpenHashMap[6];
+		for (int i = 0; i < 6; i++) {
+			maps[i] = new Long2ObjectOpenHashMap<>();
+		}
+		return maps;
+	}
+
+	private static <T> void put(Long2ObjectOpenHashMap<T>[] maps, BlockPos pos, Direction side, T value) {
+		if (value == null) {
+			maps[side.getId()].remove(pos.asLong());
+		} else {
+			maps[side.getId()].put(pos.asLong(), value);
+		}
+	}
+
+	private static <T> void putAll(Long2ObjectOpenHashMap<T>[] maps, BlockPos pos, T value) {
+		for (Direction side : Direction.values()) {
+			put(maps, pos, side, value);
+		}
+	}
+}
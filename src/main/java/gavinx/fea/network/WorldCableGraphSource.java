@@ -0,0 +1,51 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FEApi;
+import gavinx.fea.api.FEBlockEnergy;
+import gavinx.fea.api.FECable;
+import gavinx.fea.api.FELinkPoint;
+import gavinx.fea.api.FEStorage;
+
+import java.util.Objects;
+
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+/** {@link CableGraphSource} backed by the {@link FEApi} lookups of a server world. */
+public final class WorldCableGraphSource implements CableGraphSource {
+	private final ServerWorld world;
+
+	public WorldCableGraphSource(ServerWorld world) {
+		this.world = Objects.requireNonNull(world, "world");
+	}
+
+	public ServerWorld getWorld() {
+		return world;
+	}
+
+	@Override
+	public FECable findCable(BlockPos pos, Direction side) {
+		return FEApi.CABLE.find(world, pos, side);
+	}
+
+	@Override
+	public FEStorage findStorage(BlockPos pos, Direction side) {
+		return FEApi.STORAGE.find(world, pos, side);
+	}
+
+	@Override
+	public FEBlockEnergy findBlockEnergy(BlockPos pos) {
+		return FEApi.BLOCK_ENERGY.find(world, pos, null);
+	}
+
+	@Override
+	public FELinkPoint findLinkPoint(BlockPos pos, Direction side) {
+		return FEApi.LINK_POINT.find(world, pos, side);
+	}
+
+	@Override
+	public long getTime() {
+		return world.getTime();
+	}
+}
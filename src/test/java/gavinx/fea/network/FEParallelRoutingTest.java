@@ -0,0 +1,190 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FEBlockEnergy;
+import gavinx.fea.api.FECable;
+import gavinx.fea.api.FETransactions;
+import gavinx.fea.impl.SimpleFEStorage;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Routes searched ahead on a worker pool ({@link FECableNetworks#setRouteThreads(int)}) must give the same results as
+ * routes searched inline.
+ *
+ * <p>Builds the same randomized worlds twice, each a grid of cables with mixed resistance under scheduler-driven
+ * generators and sinks plus passive consumers with input priorities, every other world in buffered transfer mode.
+ * Both copies run the same ticks, including random cable edits; one copy prefetches its routes on a pool each tick.
+ * After every tick the amount of every storage, each world's lost and buffered FE must be equal.
+ */
+class FEParallelRoutingTest {
+	private static final int GRID = 16;
+	private static final long GENERATOR_RATE = 400;
+	private static final long CONSUMER_RATE = 25;
+	private static final int WORLDS = 4;
+	private static final int TICKS = 200;
+
+	/** One world: its cables, machines and the random source of its edits. */
+	private static final class Dimension {
+		final InMemoryCableGraphSource source = new InMemoryCableGraphSource();
+		final FECableNetworkManager manager = new FECableNetworkManager(source);
+		final ArrayList<SimpleFEStorage> generators = new ArrayList<>();
+		final ArrayList<SimpleFEStorage> consumers = new ArrayList<>();
+		final FECable[] cableTypes = new FECable[3];
+		final Random edits;
+
+		Dimension(long seed, boolean buffered) {
+			Random random = new Random(seed);
+			edits = new Random(seed * 31 + 7);
+			for (int i = 0; i < cableTypes.length; i++) {
+				cableTypes[i] = cable(1_000L << i, i * 2);
+			}
+			manager.setBufferedTransfer(buffered);
+			FENetworkScheduler scheduler = manager.getScheduler();
+
+			for (int x = 0; x < GRID; x++) {
+				for (int z = 0; z < GRID; z++) {
+					if (random.nextInt(8) == 0) continue;
+					source.putCable(new BlockPos(x, 0, z), cableTypes[random.nextInt(cableTypes.length)]);
+
+					BlockPos machinePos = new BlockPos(x, 1, z);
+					int kind = random.nextInt(10);
+					if (kind == 0) {
+						SimpleFEStorage storage = new SimpleFEStorage(50_000, 50_000, true, true);
+						source.putStorage(machinePos, storage);
+						scheduler.registerSource(machinePos, Direction.DOWN, GENERATOR_RATE);
+						generators.add(storage);
+					} else if (kind < 4) {
+						SimpleFEStorage storage = new SimpleFEStorage(2_000);
+						source.putStorage(machinePos, storage);
+						if (kind == 1) {
+							scheduler.registerSink(machinePos, Direction.DOWN, CONSUMER_RATE * 2);
+						} else {
+							source.putBlockEnergy(machinePos, consumer(kind == 2 ? 5 : 0));
+						}
+						consumers.add(storage);
+					}
+				}
+			}
+		}
+
+		void edit() {
+			if (edits.nextInt(4) != 0) return;
+			BlockPos pos = new BlockPos(edits.nextInt(GRID), 0, edits.nextInt(GRID));
+			if (source.findCable(pos, Direction.UP) != null) {
+				source.clear(pos);
+			} else {
+				source.putCable(pos, cableTypes[edits.nextInt(cableTypes.length)]);
+			}
+			manager.markDirty(pos);
+		}
+
+		void tick() {
+			for (SimpleFEStorage generator : generators) {
+				FETransactions.insert(generator, GENERATOR_RATE / 2, false);
+			}
+			manager.tick();
+			manager.getScheduler().tick();
+			for (SimpleFEStorage consumer : consumers) {
+				FETransactions.extract(consumer, CONSUMER_RATE, false);
+			}
+			source.tick();
+		}
+
+		/** Storage amounts, then lost and buffered FE. */
+		long[] state() {
+			long[] state = new long[generators.size() + consumers.size() + 2];
+			int i = 0;
+			for (SimpleFEStorage generator : generators) state[i++] = generator.getAmount();
+			for (SimpleFEStorage consumer : consumers) state[i++] = consumer.getAmount();
+			state[i++] = manager.getLostFE();
+			state[i] = manager.getBufferedFE();
+			return state;
+		}
+	}
+
+	private static FECable cable(long capacity, int resistancePercent) {
+		return new FECable() {
+			@Override
+			public long getTransferCapacityFE() {
+				return capacity;
+			}
+
+			@Override
+			public int getResistancePercent() {
+				return resistancePercent;
+			}
+		};
+	}
+
+	private static FEBlockEnergy consumer(int priority) {
+		return new FEBlockEnergy() {
+			@Override
+			public long getStorageCapacityFE() {
+				return 2_000;
+			}
+
+			@Override
+			public int getInputPriority(Direction side) {
+				return priority;
+			}
+		};
+	}
+
+	@Test
+	void prefetchedRoutesMatchInlineRoutes() {
+		for (long seed : new long[] {1, 17, 4242}) {
+			compare(seed);
+		}
+	}
+
+	private static void compare(long seed) {
+		ArrayList<Dimension> inline = new ArrayList<>();
+		ArrayList<Dimension> parallel = new ArrayList<>();
+		ArrayList<FECableNetworkManager> managers = new ArrayList<>();
+		for (int w = 0; w < WORLDS; w++) {
+			inline.add(new Dimension(seed + w, w % 2 == 1));
+			Dimension d = new Dimension(seed + w, w % 2 == 1);
+			parallel.add(d);
+			managers.add(d.manager);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(WORLDS);
+		long prefetched = 0;
+		try {
+			for (int t = 0; t < TICKS; t++) {
+				for (int w = 0; w < WORLDS; w++) {
+					inline.get(w).edit();
+					parallel.get(w).edit();
+				}
+				prefetched += FEParallelRouting.prefetch(managers, pool);
+				for (int w = 0; w < WORLDS; w++) {
+					Dimension a = inline.get(w);
+					Dimension b = parallel.get(w);
+					a.tick();
+					b.tick();
+					assertArrayEquals(a.state(), b.state(), "seed " + seed + ", world " + w + ", tick " + t);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+
+		long moved = 0;
+		for (Dimension d : parallel) {
+			for (SimpleFEStorage consumer : d.consumers) moved += consumer.getAmount();
+		}
+		assertTrue(prefetched > 0, "no routes were prefetched");
+		assertTrue(moved > 0, "no FE reached the consumers");
+	}
+}
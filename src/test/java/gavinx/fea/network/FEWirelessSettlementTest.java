@@ -0,0 +1,69 @@
+package gavinx.fea.network;
+
+import gavinx.fea.api.FESideMode;
+import gavinx.fea.impl.SimpleFEStorage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A wireless port's transfer limit is one allowance per tick, shared by every step of the settlement.
+ */
+class FEWirelessSettlementTest {
+	private static final long LIMIT = 100;
+
+	@Test
+	void portsStayWithinTheirLimitPerTick() {
+		SimpleFEStorage tx = new SimpleFEStorage(100_000, 100_000, false, true);
+		SimpleFEStorage buffer = new SimpleFEStorage(100_000, 50_000, true, true);
+		SimpleFEStorage rx = new SimpleFEStorage(100_000, 0, true, false);
+		FEWirelessSettlement settlement = new FEWirelessSettlement();
+
+		for (int tick = 0; tick < 5; tick++) {
+			long txBefore = tx.getAmount();
+			long bufferBefore = buffer.getAmount();
+			long rxBefore = rx.getAmount();
+
+			settle(settlement, tx, buffer, rx, LIMIT);
+
+			assertTrue(txBefore - tx.getAmount() <= LIMIT, "transmitter moved " + (txBefore - tx.getAmount()));
+			assertTrue(Math.abs(buffer.getAmount() - bufferBefore) <= LIMIT,
+					"buffer moved " + (buffer.getAmount() - bufferBefore));
+			assertTrue(rx.getAmount() - rxBefore <= LIMIT, "receiver moved " + (rx.getAmount() - rxBefore));
+			assertEquals(txBefore + bufferBefore + rxBefore, tx.getAmount() + buffer.getAmount() + rx.getAmount());
+		}
+		assertEquals(5 * LIMIT, rx.getAmount());
+		assertEquals(50_000, buffer.getAmount());
+	}
+
+	@Test
+	void transmitterLeftoverGoesToBuffers() {
+		SimpleFEStorage tx = new SimpleFEStorage(100_000, 100_000, false, true);
+		SimpleFEStorage buffer = new SimpleFEStorage(100_000, 0, true, true);
+		SimpleFEStorage rx = new SimpleFEStorage(100_000, 0, true, false);
+		FEWirelessSettlement settlement = new FEWirelessSettlement();
+
+		settlement.begin();
+		settlement.add(tx, FESideMode.OUT, LIMIT, 0);
+		settlement.add(buffer, FESideMode.BOTH, LIMIT, 0);
+		settlement.add(rx, FESideMode.IN, 40, 0);
+		settlement.settle();
+
+		// The receiver takes 40 of the transmitter's 100; the other 60 fill the buffer, which then has no receiver
+		// allowance left to feed.
+		assertEquals(100_000 - LIMIT, tx.getAmount());
+		assertEquals(60, buffer.getAmount());
+		assertEquals(40, rx.getAmount());
+	}
+
+	private static void settle(FEWirelessSettlement settlement, SimpleFEStorage tx, SimpleFEStorage buffer,
+			SimpleFEStorage rx, long limit) {
+		settlement.begin();
+		settlement.add(tx, FESideMode.OUT, limit, 0);
+		settlement.add(buffer, FESideMode.BOTH, limit, 0);
+		settlement.add(rx, FESideMode.IN, limit, 0);
+		settlement.settle();
+	}
+}
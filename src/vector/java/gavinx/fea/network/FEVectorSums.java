@@ -0,0 +1,65 @@
+package gavinx.fea.network;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link FESums} kernels on the Java Vector API. Only loaded when {@link FESums#VECTORIZED} found the incubator module,
+ * so nothing else may reference this class. Lives in its own source set, the only one compiled with the incubator
+ * module.
+ */
+final class FEVectorSums {
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	private FEVectorSums() {}
+
+	static int lanes() {
+		return SPECIES.length();
+	}
+
+	/**
+	 * Lane-wise sums of non-negative values. A lane that ever overflows leaves its sign bit in {@code seen}; then the
+	 * total overflows as well and saturates. Otherwise the lanes are exact and combined with saturating adds.
+	 */
+	static long saturatingSum(long[] values, int length) {
+		LongVector acc = LongVector.zero(SPECIES);
+		LongVector seen = acc;
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			acc = acc.add(LongVector.fromArray(SPECIES, values, i));
+			seen = seen.or(acc);
+		}
+		if (seen.compare(VectorOperators.LT, 0L).anyTrue()) return Long.MAX_VALUE;
+
+		long total = 0;
+		for (int lane = 0; lane < SPECIES.length(); lane++) {
+			total = satAdd(total, acc.lane(lane));
+		}
+		for (; i < length; i++) {
+			total = satAdd(total, values[i]);
+		}
+		return total;
+	}
+
+	static boolean anyGreater(long[] a, long[] b, int length) {
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			LongVector va = LongVector.fromArray(SPECIES, a, i);
+			LongVector vb = LongVector.fromArray(SPECIES, b, i);
+			if (va.compare(VectorOperators.GT, vb).anyTrue()) return true;
+		}
+		for (; i < length; i++) {
+			if (a[i] > b[i]) return true;
+		}
+		return false;
+	}
+
+	/** {@link FESums#satAdd}; the {@code vector} source set is compiled without the main classes. */
+	private static long satAdd(long a, long b) {
+		long r = a + b;
+		return r < 0 ? Long.MAX_VALUE : r;
+	}
+}